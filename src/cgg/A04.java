@@ -5,17 +5,16 @@ import java.util.ArrayList;
 import java.util.List;
 import tools.Color;
 import tools.Ebene;
+import tools.EnvironmentMap;
 import tools.Group;
 import tools.Lichtquelle;
 import tools.Mat44;
 import tools.Quader;
-import tools.Ray;
 import tools.Shape;
 import tools.SimpleCamera;
 import tools.SimpleRayTracer;
 import tools.Sphere;
 import tools.StarrySky;
-import tools.Vec2;
 import tools.Vec3;
 
 
@@ -84,8 +83,8 @@ public class A04 {
 
 
         
-        // 4. 背景色
-        Color backgroundColor = new Color(0.04, 0.04, 0.1, 1); // 深蓝色背景
+        // 4. 背景：星空预先烘焙成环境贴图，未击中的射线只需一次纹素读取
+        EnvironmentMap sky = EnvironmentMap.bake(starrySky, 2048, 1024);
 
         // 5. 添加光源
         List<Lichtquelle> lichtquellen = new ArrayList<>();  
@@ -104,7 +103,7 @@ public class A04 {
         SimpleRayTracer rayTracer = new SimpleRayTracer(
             camera,
             scene,
-            backgroundColor,
+            sky,
             lichtquellen  
         );
 
@@ -117,18 +116,8 @@ public class A04 {
                 System.out.println("doing: "+ (y * 100 / 800 ) + "% ");
             }
             for (int x = 0; x < 800; x++){
-                Color pixelColor = rayTracer.getColor(x, y);
-
-                // 如果是背景色，替换为星空颜色
-                if (isBackgroundColor(pixelColor, backgroundColor)) {
-                    Ray ray = camera.generateRay(new Vec2(x, y));
-                    // 获取当前像素对应的光线方向
-                    Vec3 rayDir = ray.direction();
-                    // 替换为星空颜色
-                    pixelColor = starrySky.getSkyColor(rayDir);
-                }
-
-                image.setPixel(x,y, pixelColor);
+                // 每条主射线只追踪一次：未击中时颜色已经是星空颜色
+                image.setPixel(x,y, rayTracer.getColor(x, y));
             }
         }
 
@@ -136,16 +125,6 @@ public class A04 {
     }
        
 
-    /**
-     * 辅助方法：判断是否为背景色（避免浮点数精度问题）
-     */
-    private static boolean isBackgroundColor(Color color, Color bgColor) {
-        double eps = 0.001; // 精度阈值
-        return Math.abs(color.r() - bgColor.r()) < eps
-                && Math.abs(color.g() - bgColor.g()) < eps
-                && Math.abs(color.b() - bgColor.b()) < eps;
-    }
-
     /**
      * 创建一个雪人组（包含上下两个球体）
      */
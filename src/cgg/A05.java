@@ -3,22 +3,24 @@ package cgg;
 import cgg.Image;
 import java.util.ArrayList;
 import java.util.List;
+import tools.Bvh;
 import tools.Color;
 import tools.Ebene;
+import tools.EnvironmentMap;
 import tools.Group;
-import tools.Hit;
 import tools.ImageTexture;
+import tools.Instance;
 import tools.Lichtquelle;
 import tools.Mat44;
 import tools.Quader;
-import tools.Ray;
 import tools.Shape;
 import tools.SimpleCamera;
 import tools.SimpleRayTracer;
 import tools.Sphere;
 import tools.StarrySky;
-import tools.Vec2;
+import tools.StopWatch;
 import tools.Vec3;
+import tools.WavefrontRenderer;
 
 
 
@@ -51,42 +53,38 @@ public class A05 {
 
 
 
+        // 两种雪人（黑色带地球纹理、白色）各只构建一次，作为原型，各有自己的BVH；
+        // 场景中的每个雪人只是引用原型的 Instance（一个变换），顶层BVH建在所有实例的包围盒上
+        double baseRadius = 1.8;
+        Vec3 ursprung = new Vec3(0, baseRadius, 0);
+        Shape schwarz = new Bvh(createSnowman(ursprung, baseRadius, new Color(0.01, 0.01, 0.01, 1), false, globeTexture).getChildren());
+        Shape weiss = new Bvh(createSnowman(ursprung, baseRadius, new Color(1, 1, 1, 1), true, globeTexture).getChildren());
+        List<Shape> instanzen = new ArrayList<>();
+
         // 循环创建多个4×4雪人矩阵
         int matrixCount = 20; // 矩阵数量
         double matrixSpacing = 30; // 矩阵之间的间距
 
         for (int i = 0; i < matrixCount; i++) {
-            Group snowmanMatrixGroup = new Group();
+            // 平移当前矩阵：沿Z轴前后排列（i=0最前，i越大越往后）
+            double zOffset = -21 + i * matrixSpacing; // 基于原Z轴偏移，叠加矩阵间距
+            Mat44 matrixTrans = Mat44.translate(0, 0, zOffset);
 
-            // 1. 黑色雪人组：
-            Group blackSnowmanGroup = new Group();
+            // 1. 黑色雪人：
             Mat44 blackTrans = Mat44.scale(1, 1, 1)
                                     .multiply(Mat44.rotateY(0))
                                     .multiply(Mat44.translate(1, 0, -1));
-            blackSnowmanGroup.setTransform(blackTrans);
 
-            // 2. 白色雪人组：
-            Group whiteSnowmanGroup = new Group();
+            // 2. 白色雪人：
             Mat44 whiteTrans = Mat44.scale(1, 1, 1)
                                     .multiply(Mat44.rotateY(0))
                                     .multiply(Mat44.translate(1.1, 0, 3.2));
-            whiteSnowmanGroup.setTransform(whiteTrans);
 
             // 创建雪人网格
-            createSnowmanGrid(4, 4,blackSnowmanGroup, whiteSnowmanGroup, globeTexture);
-            snowmanMatrixGroup.addChild(blackSnowmanGroup);
-            snowmanMatrixGroup.addChild(whiteSnowmanGroup);
-          
-
-            // 平移当前矩阵：沿Z轴前后排列（i=0最前，i越大越往后）
-            double zOffset = -21 + i * matrixSpacing; // 基于原Z轴偏移，叠加矩阵间距
-            Mat44 matrixTrans = Mat44.translate(0, 0, zOffset);
-            snowmanMatrixGroup.setTransform(matrixTrans);
-
-            scene.add(snowmanMatrixGroup);  // 加入场景
+            createSnowmanGrid(4, 4, matrixTrans.multiply(blackTrans), matrixTrans.multiply(whiteTrans),
+                              schwarz, weiss, instanzen);
         }
-      
-
+        scene.add(new Bvh(instanzen));  // 加入场景
 
          // 1. 加载images文件夹下的snow图片
          ImageTexture snowTexture = null;
@@ -112,8 +110,8 @@ public class A05 {
 
     
         
-        // 4. 背景色
-        Color backgroundColor = new Color(0.04, 0.04, 0.1, 1); // 深蓝色背景
+        // 4. 背景：星空预先烘焙成环境贴图，未击中的射线只需一次纹素读取
+        EnvironmentMap sky = EnvironmentMap.bake(starrySky, 2048, 1024);
 
         // 5. 添加光源
         List<Lichtquelle> lichtquellen = new ArrayList<>();  
@@ -132,56 +130,25 @@ public class A05 {
         SimpleRayTracer rayTracer = new SimpleRayTracer(
             camera,
             scene,
-            new Color(0.04,0.04,0.1,1), // 背景色
+            sky, // 背景（星空）
             lichtquellen  
         );
 
-        //  6. 渲染图片
+        //  6. 渲染图片：按64×64的图块分阶段渲染（生成、求交、着色、阴影各自整批并行）
+        //  地面（slopePlane）已在场景中正常着色，未击中任何物体时颜色直接来自星空背景
         Image image = new Image(800,800);
         System.out.println("start rendering...");
+        StopWatch uhr = new StopWatch();
+        WavefrontRenderer renderer = new WavefrontRenderer(rayTracer);
+        int skyPixels = renderer.render(image, 64); // 未击中任何物体的像素数
+        uhr.stop("a05 render");
 
-        for (int y = 0; y < 800; y++) {
-            if(y % 100 == 0){
-                System.out.println("doing: "+ (y * 100 / 800 ) + "% ");
-            }
-            for (int x = 0; x < 800; x++){
-                
-                // 关键：检测是否击中slopePlane，若是则采样纹理
-                Ray ray = camera.generateRay(new Vec2(x, y));
-
-                Color pixelColor = rayTracer.getColor(x, y);
-
-                // 只有当击中的是背景色时，才尝试采样地面纹理
-                if (isBackgroundColor(pixelColor, backgroundColor)) {
-                    // 检查是否击中地面
-                    Hit hit = slopePlane.intersect(ray);
-                    if (hit != null) {
-                        // 采样地面纹理
-                        pixelColor = slopePlane.getColorAt(hit.position());
-                    } else {
-                        // 既没击中物体也没击中地面，显示星空
-                        pixelColor = starrySky.getSkyColor(ray.direction());
-                    }
-                }
-
-                image.setPixel(x,y, pixelColor);
-            }
-        }
-
+        System.out.println("sky pixels: " + skyPixels);
+        rayTracer.printShadowCacheStats();
         image.writePng("a05");
     }
        
 
-    /**
-     * 辅助方法：判断是否为背景色（避免浮点数精度问题）
-     */
-    private static boolean isBackgroundColor(Color color, Color bgColor) {
-        double eps = 0.001; // 精度阈值
-        return Math.abs(color.r() - bgColor.r()) < eps
-                && Math.abs(color.g() - bgColor.g()) < eps
-                && Math.abs(color.b() - bgColor.b()) < eps;
-    }
-
     /**
      * 创建一个雪人组（包含上下两个球体）
      */
@@ -234,10 +201,9 @@ public class A05 {
         
     }
 
-    private static void createSnowmanGrid(int rows, int cols, Group blackGroup, Group whiteGroup, ImageTexture globeTexture) {
-        double baseRadius = 1.8; // 保留原大球半径
+    private static void createSnowmanGrid(int rows, int cols, Mat44 blackTrans, Mat44 whiteTrans,
+                                          Shape schwarz, Shape weiss, List<Shape> instanzen) {
         double spacing = 4.6;    // 保留原间距
-        double yPos = baseRadius; // 下大球的y位置（原球体y坐标）
 
         // 中心偏移 保持矩阵居中不变
         double centerOffsetX = (cols - 1) * spacing / 2.0;
@@ -245,20 +211,16 @@ public class A05 {
 
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
-                // 计算下大球位置（原球体位置，不变）
+                // 雪人位置（原球体位置，不变）
                 double x = col * spacing - centerOffsetX;
                 double z = -(row * spacing - centerOffsetZ) - 21;
-                Vec3 baseCenter = new Vec3(x, yPos, z);
+                Mat44 position = Mat44.translate(x, 0, z);
 
-                // 按列设置颜色（偶数列黑，奇数列白）
-                Color color = (col % 2 == 0) ? new Color(0.01, 0.01, 0.01, 1) : new Color(1,1,1,1);
-            
-                // 创建雪人组并添加到对应组
-                Group snowman = createSnowman(baseCenter, baseRadius, color, col % 2 != 0, globeTexture);
+                // 按列选择原型（偶数列黑，奇数列白）
                 if (col % 2 == 0) {
-                    blackGroup.addChild(snowman);
+                    instanzen.add(new Instance(schwarz, blackTrans.multiply(position)));
                 } else {
-                    whiteGroup.addChild(snowman);
+                    instanzen.add(new Instance(weiss, whiteTrans.multiply(position)));
                 }
             }
         }
@@ -0,0 +1,63 @@
+package cgg;
+
+import java.util.ArrayList;
+import java.util.List;
+import tools.Color;
+import tools.Ebene;
+import tools.EnvironmentMap;
+import tools.Group;
+import tools.ImageTexture;
+import tools.Lichtquelle;
+import tools.Mat44;
+import tools.SequenceRenderer;
+import tools.Shape;
+import tools.SimpleCamera;
+import tools.SimpleRayTracer;
+import tools.Sphere;
+import tools.StarrySky;
+import tools.Vec3;
+
+
+public class Animation {
+
+    public static void main(String[] args) {
+        int width = 400;
+        int height = 400;
+
+        // 所有帧共享的不变数据：星空只烘焙一次，纹理只加载一次
+        EnvironmentMap sky = EnvironmentMap.bake(new StarrySky(), 2048, 1024);
+        ImageTexture globus = ImageTexture.shared("images/globus.png");
+
+        SequenceRenderer renderer = new SequenceRenderer(width, height, zeit -> {
+            // 雪人圈绕Y轴旋转，相机慢慢升高
+            Group kreis = new Group();
+            for (int i = 0; i < 8; i++) {
+                double winkel = 2 * Math.PI * i / 8;
+                Vec3 mitte = new Vec3(6 * Math.cos(winkel), 1.8, 6 * Math.sin(winkel));
+                kreis.addChild(i % 2 == 0 ? new Sphere(mitte, 1.8, globus)
+                                          : new Sphere(mitte, 1.8, new Color(1, 1, 1, 1), null));
+                Vec3 kopf = new Vec3(mitte.x(), mitte.y() + 2.7, mitte.z());
+                kreis.addChild(new Sphere(kopf, 1.4, new Color(0.01, 0.01, 0.01, 1), null));
+            }
+            kreis.setTransform(Mat44.rotateY(zeit * Math.PI / 2));
+
+            List<Shape> scene = new ArrayList<>();
+            scene.add(kreis);
+            scene.add(new Ebene(new Color(0.9, 0.9, 0.9, 1)));
+
+            List<Lichtquelle> lichtquellen = new ArrayList<>();
+            lichtquellen.add(Lichtquelle.createRichtungslicht(new Vec3(-5, -2, -2).normalize(), new Color(0.7, 0.7, 0.7, 1)));
+            lichtquellen.add(Lichtquelle.createPunktlicht(new Vec3(0, 15, -10), new Color(0.6, 0.6, 0.6, 1)));
+
+            // 相机看向雪人圈的中心（SimpleCamera 沿 -forward 方向看）
+            Vec3 cameraPos = new Vec3(0, 8 + 4 * zeit, -22);
+            Vec3 forward = cameraPos.subtract(new Vec3(0, 2, 0));
+            SimpleCamera camera = new SimpleCamera(Math.PI / 3, width, height, cameraPos, forward);
+            return new SimpleRayTracer(camera, scene, sky, lichtquellen);
+        });
+
+        long start = System.currentTimeMillis();
+        renderer.render("animation", 48, 24);
+        System.out.format("48 frames in %.1f s\n", (System.currentTimeMillis() - start) / 1000.0);
+    }
+}
@@ -0,0 +1,61 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import tools.Color;
+import tools.ImageWriter;
+
+/**
+ * 每个分量一个 float 的图像（12字节/像素，double 的一半）。
+ * 线性HDR值的精度约7位有效数字，对显示和色调映射足够；需要累加很多样本的地方
+ * （PathTracer 的累加缓冲区）仍然用 double，只有每遍的平均值写进这里。
+ */
+public class FloatImage implements tools.Image {
+    private final int width;
+    private final int height;
+    private final float[] pixels;
+
+    public FloatImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new float[width * height * 3];
+    }
+
+    @Override
+    public void setPixel(int x, int y, Color color) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        int index = (y * width + x) * 3;
+        pixels[index] = (float) color.r();
+        pixels[index + 1] = (float) color.g();
+        pixels[index + 2] = (float) color.b();
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return Color.black;
+        }
+        int index = (y * width + x) * 3;
+        return new Color(pixels[index], pixels[index + 1], pixels[index + 2], 1);
+    }
+
+    public void writePng(String name) {
+        ImageWriter.writePng(name, this);
+    }
+
+    public void writePng(OutputStream out) throws IOException {
+        ImageWriter.writePng(out, this);
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+}
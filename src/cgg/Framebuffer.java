@@ -0,0 +1,35 @@
+package cgg;
+
+/**
+ * 帧缓冲区的存储格式。所有格式都实现 tools.Image，渲染器和 ImageWriter 不需要知道用的是哪一种。
+ *
+ * <ul>
+ * <li>DOUBLE：cgg.Image，24字节/像素（8K约800MB）</li>
+ * <li>FLOAT：12字节/像素，线性HDR，精度足够做色调映射</li>
+ * <li>HALF：6字节/像素，半精度浮点，只用于显示输出</li>
+ * <li>RGBE：4字节/像素，共用指数，只用于显示输出</li>
+ * </ul>
+ * 需要累加样本的地方（PathTracer）自己保留 double 累加缓冲区，只有平均值写进帧缓冲区。
+ */
+public enum Framebuffer {
+    DOUBLE(24), FLOAT(12), HALF(6), RGBE(4);
+
+    public final int bytesPerPixel;
+
+    Framebuffer(int bytesPerPixel) {
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    public tools.Image create(int width, int height) {
+        return switch (this) {
+            case DOUBLE -> new Image(width, height);
+            case FLOAT -> new FloatImage(width, height);
+            case HALF -> new HalfImage(width, height);
+            case RGBE -> new RgbeImage(width, height);
+        };
+    }
+
+    public long bytes(int width, int height) {
+        return (long) bytesPerPixel * width * height;
+    }
+}
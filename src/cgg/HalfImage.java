@@ -0,0 +1,64 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import tools.Color;
+import tools.ImageWriter;
+
+/**
+ * 每个分量一个半精度浮点数（IEEE 754 binary16，6字节/像素）的图像，用于显示输出。
+ *
+ * <p>
+ * 11位有效数字（相对误差约 0.05%），范围到 65504，比16位PNG的量化误差小，
+ * 可以保存色调映射前的HDR值。不适合累加样本：和很大时加上一个小样本会被舍入掉。
+ */
+public class HalfImage implements tools.Image {
+    private final int width;
+    private final int height;
+    private final short[] pixels;
+
+    public HalfImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new short[width * height * 3];
+    }
+
+    @Override
+    public void setPixel(int x, int y, Color color) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        int index = (y * width + x) * 3;
+        pixels[index] = Float.floatToFloat16((float) color.r());
+        pixels[index + 1] = Float.floatToFloat16((float) color.g());
+        pixels[index + 2] = Float.floatToFloat16((float) color.b());
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return Color.black;
+        }
+        int index = (y * width + x) * 3;
+        return new Color(Float.float16ToFloat(pixels[index]), Float.float16ToFloat(pixels[index + 1]),
+                         Float.float16ToFloat(pixels[index + 2]), 1);
+    }
+
+    public void writePng(String name) {
+        ImageWriter.writePng(name, this);
+    }
+
+    public void writePng(OutputStream out) throws IOException {
+        ImageWriter.writePng(out, this);
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+}
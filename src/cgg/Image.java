@@ -1,6 +1,8 @@
 
 package cgg;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import tools.*;
 
 public class Image implements tools.Image {
@@ -54,6 +56,11 @@ public class Image implements tools.Image {
         // write the image data to disk in PNG format.
     }
 
+    // PNG写进一个流（例如HTTP响应），流不关闭
+    public void writePng(OutputStream out) throws IOException {
+        ImageWriter.writePng(out, pixels, width, height);
+    }
+
     public void writeHdr(String name) {
         ImageWriter.writeHdr(name,pixels,width,height);
         // TODO This call also needs to be adjusted once Image() and setPixel()
@@ -0,0 +1,98 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import tools.Color;
+import tools.ImageWriter;
+import tools.ReinhardGlobalTmo;
+import tools.Scene;
+import tools.WavefrontRenderer;
+
+
+/**
+ * 比较帧缓冲区格式：ImageBenchmark scene.json（图像大小由场景的相机决定）
+ *
+ * <p>
+ * 每种格式：分配帧缓冲区（测量堆内存）、渲染（WavefrontRenderer）、色调映射（ReinhardGlobalTmo）、
+ * 编码PNG（写进一个只计数的流，不算磁盘），以及和 DOUBLE 结果相比的最大相对误差。
+ * 场景只加载一次，第一轮只用于预热JIT，不计入结果。
+ */
+public class ImageBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Scene scene = Scene.load(args[0]);
+        int width = scene.width();
+        int height = scene.height();
+
+        lauf(scene, Framebuffer.FLOAT, null); // 预热
+
+        System.out.format("%dx%d%n", width, height);
+        System.out.format("%-7s %10s %10s %8s %8s %8s %8s %10s %10s%n",
+                          "format", "bytes", "heap", "render", "tonemap", "png", "total", "max error", "8K bytes");
+        tools.Image referenz = null;
+        for (Framebuffer format : Framebuffer.values()) {
+            Messung m = lauf(scene, format, referenz);
+            if (format == Framebuffer.DOUBLE) {
+                referenz = m.image();
+            }
+            System.out.format("%-7s %10s %10s %7.2fs %7.2fs %7.2fs %7.2fs %10.2e %10s%n",
+                              format, mb(format.bytes(width, height)), mb(m.heap()), m.render(), m.tonemap(),
+                              m.png(), m.render() + m.tonemap() + m.png(), m.fehler(),
+                              mb(format.bytes(7680, 4320)));
+        }
+    }
+
+    private record Messung(tools.Image image, long heap, double render, double tonemap, double png, double fehler) {}
+
+    private static Messung lauf(Scene scene, Framebuffer format, tools.Image referenz) throws IOException {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long vorher = rt.totalMemory() - rt.freeMemory();
+        tools.Image image = format.create(scene.width(), scene.height());
+        long heap = rt.totalMemory() - rt.freeMemory() - vorher;
+
+        long t0 = System.nanoTime();
+        new WavefrontRenderer(scene.rayTracer()).render(image, 64);
+        long t1 = System.nanoTime();
+        new ReinhardGlobalTmo(0.18).toneMap(image);
+        System.out.println();
+        long t2 = System.nanoTime();
+        ImageWriter.writePng(new Zaehler(), image);
+        long t3 = System.nanoTime();
+
+        double fehler = 0;
+        if (referenz != null) {
+            for (int y = 0; y < image.height(); y++) {
+                for (int x = 0; x < image.width(); x++) {
+                    Color a = referenz.getPixel(x, y);
+                    Color b = image.getPixel(x, y);
+                    double m = Math.max(a.r(), Math.max(a.g(), a.b()));
+                    if (m > 1e-3) {
+                        double d = Math.max(Math.abs(a.r() - b.r()), Math.max(Math.abs(a.g() - b.g()), Math.abs(a.b() - b.b())));
+                        fehler = Math.max(fehler, d / m);
+                    }
+                }
+            }
+        }
+        return new Messung(image, heap, (t1 - t0) / 1e9, (t2 - t1) / 1e9, (t3 - t2) / 1e9, fehler);
+    }
+
+    private static String mb(long bytes) {
+        return String.format("%.1f MB", bytes / 1e6);
+    }
+
+    // 只计数的输出流：测量PNG编码，不包括磁盘
+    private static final class Zaehler extends OutputStream {
+        long n;
+
+        @Override
+        public void write(int b) {
+            n++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            n += len;
+        }
+    }
+}
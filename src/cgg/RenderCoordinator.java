@@ -0,0 +1,266 @@
+package cgg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+import tools.Color;
+import tools.SceneLoader;
+import tools.StopWatch;
+
+
+/**
+ * 分布式渲染的协调进程：
+ * RenderCoordinator scene.json host:port host:port ... [--camera kamera.json] [--tile 64]
+ *
+ * <p>
+ * 图像分成图块，每个工作进程（RenderWorker）一个线程和一个连接：先发送场景，
+ * 然后一次发一个图块，收到结果后写进 Image，再取下一个。快的工作进程自然取得更多图块。
+ *
+ * <p>
+ * 重新分配：
+ * <ul>
+ * <li>连接断开、读写出错或超过 TIMEOUT_MS 没有回复：这个工作进程不再使用，它手上的图块放回队列</li>
+ * <li>队列空了但还有图块在别处计算：空闲的工作进程再算一遍已经运行了平均图块时间 LANGSAM 倍以上的图块
+ *     （最多 MAX_VERSUCHE 份），先回来的结果有效，后回来的丢弃</li>
+ * </ul>
+ * 所有工作进程都失败而图块还没算完时抛出异常。
+ * 图像由调用者分配和释放（例如很大的图像用堆外的 SegmentImage 和 try-with-resources），
+ * 协调进程不持有它，失败时也不会留下一个完整大小的图像。
+ * 在一台机器上测试：启动几个 RenderWorker，渲染途中 kill 一个（死掉）或者 kill -STOP 一个（变慢）。
+ */
+public class RenderCoordinator {
+    private static final int TIMEOUT_MS = 60_000;
+    private static final double LANGSAM = 3;
+    private static final long MIN_LANGSAM_NS = 500_000_000L;
+    private static final int MAX_VERSUCHE = 3;
+
+    // 一个图块：第一个完成的副本有效
+    private static final class Kachel {
+        final int id, x0, y0, breite, hoehe;
+        final AtomicBoolean fertig = new AtomicBoolean();
+        final AtomicInteger versuche = new AtomicInteger();
+        volatile long gestartet; // 最近一次发出的时间（0 = 还没有发出）
+
+        Kachel(int id, int x0, int y0, int breite, int hoehe) {
+            this.id = id;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.breite = breite;
+            this.hoehe = hoehe;
+        }
+    }
+
+    private final byte[] inhalt;
+    private final String hash;
+    private final String kamera;
+    private final int width;
+    private final int height;
+    private final List<Kachel> kacheln = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Kachel> offen = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger fertig = new AtomicInteger();
+    private final AtomicInteger aktiveWorker = new AtomicInteger();
+    private final LongAdder renderZeit = new LongAdder(); // 完成的图块的总时间（纳秒）
+    private final LongAdder wiederholt = new LongAdder();
+
+    /**
+     * @param kamera  相机（和场景文件中 "camera" 一样，可以加 "width"/"height"），null = 场景自己的相机
+     */
+    public RenderCoordinator(byte[] inhalt, String kamera, int kachel) {
+        this.inhalt = inhalt;
+        this.hash = SceneCache.hash(inhalt);
+        this.kamera = kamera == null ? "" : kamera;
+        int[] groesse = SceneLoader.size(inhalt);
+        if (kamera != null) {
+            JSONObject k = new JSONObject(kamera);
+            groesse[0] = k.optInt("width", groesse[0]);
+            groesse[1] = k.optInt("height", groesse[1]);
+        }
+        this.width = groesse[0];
+        this.height = groesse[1];
+
+        for (int y0 = 0; y0 < height; y0 += kachel) {
+            for (int x0 = 0; x0 < width; x0 += kachel) {
+                Kachel k = new Kachel(kacheln.size(), x0, y0, Math.min(kachel, width - x0), Math.min(kachel, height - y0));
+                kacheln.add(k);
+                offen.add(k);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: RenderCoordinator scene.json host:port ... [--camera kamera.json] [--tile 64]");
+            return;
+        }
+        Path datei = Path.of(args[0]);
+        List<InetSocketAddress> worker = new ArrayList<>();
+        String kamera = null;
+        int kachel = 64;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--camera")) {
+                kamera = Files.readString(Path.of(args[++i]));
+            } else if (args[i].equals("--tile")) {
+                kachel = Integer.parseInt(args[++i]);
+            } else {
+                int doppelpunkt = args[i].lastIndexOf(':');
+                worker.add(new InetSocketAddress(args[i].substring(0, doppelpunkt),
+                                                 Integer.parseInt(args[i].substring(doppelpunkt + 1))));
+            }
+        }
+
+        StopWatch uhr = new StopWatch();
+        RenderCoordinator koordinator = new RenderCoordinator(Files.readAllBytes(datei), kamera, kachel);
+        Image image = new Image(koordinator.width(), koordinator.height());
+        koordinator.render(worker, image);
+        uhr.stop("distributed render");
+        image.writePng(datei.getFileName().toString().replaceFirst("\\.[^.]*$", ""));
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 把所有图块分给工作进程，等到全部完成，结果写进 image（大小是 width() × height()）。
+     * 返回或抛出异常之后不会再写 image，调用者可以立即释放它。
+     */
+    public void render(List<InetSocketAddress> worker, tools.Image image) throws InterruptedException {
+        if (image.width() != width || image.height() != height) {
+            throw new IllegalArgumentException("image must be " + width + "x" + height);
+        }
+        List<Thread> threads = new ArrayList<>();
+        aktiveWorker.set(worker.size());
+        for (InetSocketAddress adresse : worker) {
+            Thread t = new Thread(() -> verbinden(adresse, image), "coordinator-" + adresse);
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+        synchronized (this) {
+            while (fertig.get() < kacheln.size() && aktiveWorker.get() > 0) {
+                wait();
+            }
+        }
+        if (fertig.get() < kacheln.size()) {
+            throw new RuntimeException("all workers failed, " + (kacheln.size() - fertig.get()) + " tiles missing");
+        }
+        System.out.format("%d tiles, %d re-issued%n", kacheln.size(), wiederholt.sum());
+    }
+
+    // 一个工作进程的连接：发送场景，然后一个接一个地发图块
+    private void verbinden(InetSocketAddress adresse, tools.Image image) {
+        Kachel aktuell = null;
+        try (Socket socket = new Socket()) {
+            socket.connect(adresse, TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            out.writeByte(RenderWorker.SZENE);
+            out.writeUTF(hash);
+            out.writeInt(inhalt.length);
+            out.write(inhalt);
+            out.writeUTF(kamera);
+            out.writeInt(width);
+            out.writeInt(height);
+
+            while (fertig.get() < kacheln.size()) {
+                aktuell = naechste();
+                if (aktuell == null) {
+                    Thread.sleep(20); // 剩下的图块都在别处计算，等它们完成或变慢
+                    continue;
+                }
+                long start = System.nanoTime();
+                aktuell.gestartet = start;
+                out.writeByte(RenderWorker.KACHEL);
+                out.writeInt(aktuell.id);
+                out.writeInt(aktuell.x0);
+                out.writeInt(aktuell.y0);
+                out.writeInt(aktuell.breite);
+                out.writeInt(aktuell.hoehe);
+                out.flush();
+
+                if (in.readByte() != RenderWorker.ERGEBNIS || in.readInt() != aktuell.id) {
+                    throw new IOException("unexpected reply");
+                }
+                byte[] roh = new byte[3 * Float.BYTES * aktuell.breite * aktuell.hoehe];
+                in.readFully(roh);
+                if (aktuell.fertig.compareAndSet(false, true)) {
+                    eintragen(image, aktuell, ByteBuffer.wrap(roh));
+                    renderZeit.add(System.nanoTime() - start);
+                    fertig.incrementAndGet();
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+                aktuell = null;
+            }
+            out.writeByte(RenderWorker.ENDE);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("worker " + adresse + " failed: " + e);
+            if (aktuell != null && !aktuell.fertig.get()) {
+                offen.add(aktuell); // 放回队列，由其他工作进程计算
+            }
+        } finally {
+            aktiveWorker.decrementAndGet();
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    // 先取队列里的图块；队列空了就取一个明显太慢的图块再算一遍
+    private Kachel naechste() {
+        Kachel k;
+        while ((k = offen.poll()) != null) {
+            if (!k.fertig.get()) {
+                k.versuche.incrementAndGet();
+                return k;
+            }
+        }
+        int n = fertig.get();
+        long schnitt = n == 0 ? 0 : renderZeit.sum() / n;
+        long grenze = Math.max(MIN_LANGSAM_NS, (long) (LANGSAM * schnitt));
+        long jetzt = System.nanoTime();
+        Kachel langsamste = null;
+        for (Kachel c : kacheln) {
+            if (c.fertig.get() || c.gestartet == 0 || c.versuche.get() >= MAX_VERSUCHE) continue;
+            if (jetzt - c.gestartet > grenze && (langsamste == null || c.gestartet < langsamste.gestartet)) {
+                langsamste = c;
+            }
+        }
+        if (langsamste != null) {
+            langsamste.versuche.incrementAndGet();
+            wiederholt.increment();
+        }
+        return langsamste;
+    }
+
+    private static void eintragen(tools.Image image, Kachel k, ByteBuffer rgb) {
+        for (int j = 0; j < k.hoehe; j++) {
+            for (int i = 0; i < k.breite; i++) {
+                image.setPixel(k.x0 + i, k.y0 + j, new Color(rgb.getFloat(), rgb.getFloat(), rgb.getFloat(), 1));
+            }
+        }
+    }
+}
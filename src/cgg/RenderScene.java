@@ -0,0 +1,97 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import tools.ImageWriter;
+import tools.PathTracer;
+import tools.Scene;
+import tools.SceneLoader;
+import tools.StopWatch;
+import tools.WavefrontRenderer;
+
+
+/**
+ * 渲染场景文件：RenderScene scenes/a.json scenes/b.scene ...
+ * 每个文件渲染成 images/&lt;文件名&gt;.png，所有场景在同一个JVM里依次渲染，不需要重新编译。
+ * RenderScene --compile scenes/a.json ... 把JSON场景转换成二进制格式（scenes/a.scene），之后加载更快。
+ * RenderScene --path 256 [--resume] scenes/a.json ... 用 PathTracer 渲染256遍，
+ * 进度保存在 images/&lt;文件名&gt;.ckpt 里；--resume 从上次中断的地方继续（场景文件改过时从头开始）。
+ * --format float|half|rgbe 选择帧缓冲区的存储格式（默认 double，见 Framebuffer）。
+ */
+public class RenderScene {
+    private static final double CHECKPOINT_SEKUNDEN = 30;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: RenderScene [--compile | --path N [--resume]] [--format F] scene.json|scene.scene ...");
+            return;
+        }
+
+        boolean compile = false;
+        boolean fortsetzen = false;
+        int samples = 0;
+        Framebuffer format = Framebuffer.DOUBLE;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--compile" -> compile = true;
+                case "--path" -> samples = Integer.parseInt(args[++i]);
+                case "--resume" -> fortsetzen = true;
+                case "--format" -> format = Framebuffer.valueOf(args[++i].toUpperCase());
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        for (; i < args.length; i++) {
+            Path datei = Path.of(args[i]);
+            String name = dropExtension(datei.getFileName().toString());
+
+            if (compile) {
+                Path ziel = datei.resolveSibling(name + ".scene");
+                StopWatch uhr = new StopWatch();
+                SceneLoader.compile(datei, ziel);
+                uhr.stop("compile " + ziel);
+                continue;
+            }
+
+            StopWatch uhr = new StopWatch();
+            Scene scene = Scene.load(datei);
+            uhr.stop("load " + datei);
+
+            uhr = new StopWatch();
+            tools.Image image = format.create(scene.width(), scene.height());
+            if (samples > 0) {
+                try (PathTracer tracer = new PathTracer(scene.camera(), List.of(scene.accelerate()),
+                                                        scene.background(), scene.lights())) {
+                    tracer.setCheckpoint(Path.of("images", name + ".ckpt"), CHECKPOINT_SEKUNDEN, szenenHash(datei));
+                    int fertig = fortsetzen ? tracer.resume(image) : 0;
+                    if (fertig > 0) {
+                        System.out.format("resumed %s at pass %d%n", name, fertig);
+                    }
+                    tracer.render(image, Math.max(0, samples - fertig));
+                }
+            } else {
+                new WavefrontRenderer(scene.rayTracer()).render(image, 64);
+            }
+            uhr.stop("render " + name);
+            ImageWriter.writePng(name, image);
+        }
+    }
+
+    // 场景文件内容的哈希（SHA-256 的前64位），检查点只在同一个场景上继续
+    private static long szenenHash(Path datei) {
+        try {
+            return Long.parseUnsignedLong(SceneCache.hash(Files.readAllBytes(datei)).substring(0, 16), 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read scene " + datei, e);
+        }
+    }
+
+    private static String dropExtension(String name) {
+        int punkt = name.lastIndexOf('.');
+        return punkt > 0 ? name.substring(0, punkt) : name;
+    }
+}
@@ -0,0 +1,256 @@
+package cgg;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+import tools.Scene;
+import tools.SceneLoader;
+import tools.SimpleRayTracer;
+import tools.WavefrontRenderer;
+
+
+/**
+ * 常驻的渲染服务（JDK自带的HTTP服务器）：场景只解析一次，Bvh 只构建一次，JIT只预热一次，
+ * 之后的任务只需要渲染。
+ *
+ * <pre>
+ * POST /scenes              请求体是场景文件（JSON或二进制），返回 {"scene": 哈希}
+ * POST /jobs                请求体是场景文件：缓存场景（如果还没有）并开始渲染
+ * POST /jobs?scene=哈希      请求体为空用场景自己的相机，或者是一个相机（和场景文件中 "camera" 一样，
+ *                           可以再加 "width"/"height"），同一个场景换一个视角
+ * GET  /jobs/编号            进度：{"job", "state", "tiles", "done", "progress", "seconds"}
+ * GET  /jobs/编号/image      完成后的PNG
+ * </pre>
+ *
+ * <p>
+ * 场景按文件内容的SHA-256缓存（SceneCache，最近使用的 MAX_SCENES 个），同样的内容不会再解析和构建；
+ * 纹理通过 ImageTexture.shared 按文件名共享，所有场景只加载一次；纹理文件改变后（修改时间或大小）
+ * 重新加载，缓存的场景也重新构建。
+ * 图像大小（场景文件里的或请求里的相机）超过 MAX_SEITE 或 MAX_PIXEL 时回答 400，内存不够时回答 503，
+ * 服务继续运行。
+ * 所有任务的图块都交给同一个线程池（每个核一个线程），先提交的任务先完成，
+ * 同时提交的任务共享核心，每完成一个图块更新一次进度。
+ *
+ * <p>
+ * RenderServer [端口] [地址]：默认只监听本机（loopback）。服务没有认证，场景里的纹理路径
+ * 会从本机的文件系统读取，所以只有明确给出地址（例如 0.0.0.0）时才对其他机器开放。
+ */
+public class RenderServer {
+    private static final int KACHEL = 32;
+    private static final int MAX_JOBS = 64;
+    private static final int MAX_SEITE = 16384;
+    private static final int MAX_PIXEL = 1 << 24; // 每个像素 3 个 double：最多约 400 MB
+
+    private final ExecutorService pool =
+        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private final SceneCache szenen = new SceneCache();
+    private final Map<Integer, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger naechsteId = new AtomicInteger(1);
+
+    // 一个渲染任务：图块完成时计数，最后一个图块完成时任务完成
+    private static final class Job {
+        final int id;
+        final Image image;
+        final int kacheln;
+        final AtomicInteger fertig = new AtomicInteger();
+        final long start = System.nanoTime();
+        volatile long ende;
+        volatile String fehler;
+
+        Job(int id, int width, int height) {
+            this.id = id;
+            this.image = new Image(width, height);
+            this.kacheln = ((width + KACHEL - 1) / KACHEL) * ((height + KACHEL - 1) / KACHEL);
+        }
+
+        boolean isDone() {
+            return fertig.get() == kacheln;
+        }
+
+        String state() {
+            if (fehler != null) return "failed";
+            if (isDone()) return "done";
+            return fertig.get() == 0 ? "queued" : "running";
+        }
+
+        JSONObject status() {
+            long bis = ende != 0 ? ende : System.nanoTime();
+            JSONObject o = new JSONObject();
+            o.put("job", id);
+            o.put("state", state());
+            o.put("tiles", kacheln);
+            o.put("done", fertig.get());
+            o.put("progress", (double) fertig.get() / kacheln);
+            o.put("seconds", (bis - start) / 1e9);
+            if (fehler != null) o.put("error", fehler);
+            return o;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        InetAddress adresse = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        new RenderServer().start(new InetSocketAddress(adresse, port));
+    }
+
+    public void start(InetSocketAddress adresse) throws IOException {
+        HttpServer server = HttpServer.create(adresse, 0);
+        server.createContext("/scenes", this::scenes);
+        server.createContext("/jobs", this::jobs);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        System.out.println("render server on " + adresse);
+    }
+
+    // POST /scenes
+    private void scenes(HttpExchange ex) throws IOException {
+        try {
+            if (!ex.getRequestMethod().equals("POST")) {
+                antworten(ex, 405, "method not allowed");
+                return;
+            }
+            byte[] inhalt = ex.getRequestBody().readAllBytes();
+            String hash = SceneCache.hash(inhalt);
+            szenen.laden(hash, inhalt);
+            antworten(ex, 200, new JSONObject().put("scene", hash));
+        } catch (RuntimeException e) {
+            antworten(ex, 400, e.toString());
+        } catch (OutOfMemoryError e) {
+            antworten(ex, 503, e.toString());
+        }
+    }
+
+    // POST /jobs, GET /jobs/编号, GET /jobs/编号/image
+    private void jobs(HttpExchange ex) throws IOException {
+        try {
+            String[] teile = ex.getRequestURI().getPath().split("/");
+            if (ex.getRequestMethod().equals("POST") && teile.length == 2) {
+                neuerJob(ex);
+                return;
+            }
+            if (!ex.getRequestMethod().equals("GET") || teile.length < 3) {
+                antworten(ex, 405, "method not allowed");
+                return;
+            }
+            Job job = jobs.get(Integer.parseInt(teile[2]));
+            if (job == null) {
+                antworten(ex, 404, "unknown job");
+            } else if (teile.length == 3) {
+                antworten(ex, 200, job.status());
+            } else if (teile[3].equals("image")) {
+                bild(ex, job);
+            } else {
+                antworten(ex, 404, "not found");
+            }
+        } catch (RuntimeException e) {
+            antworten(ex, 400, e.toString());
+        } catch (OutOfMemoryError e) {
+            antworten(ex, 503, e.toString());
+        }
+    }
+
+    private void neuerJob(HttpExchange ex) throws IOException {
+        byte[] inhalt = ex.getRequestBody().readAllBytes();
+        String query = ex.getRequestURI().getQuery();
+        String hash;
+        Scene scene;
+        if (query != null && query.startsWith("scene=")) {
+            hash = query.substring("scene=".length());
+            scene = szenen.suchen(hash);
+            if (scene == null) {
+                antworten(ex, 404, "unknown scene " + hash);
+                return;
+            }
+            if (inhalt.length > 0) {
+                // 同一个场景，另一个相机
+                JSONObject kamera = new JSONObject(new String(inhalt, StandardCharsets.UTF_8));
+                int width = kamera.optInt("width", scene.width());
+                int height = kamera.optInt("height", scene.height());
+                scene = scene.withCamera(SceneLoader.camera(kamera.toString(), width, height), width, height);
+            }
+        } else {
+            hash = SceneCache.hash(inhalt);
+            scene = szenen.laden(hash, inhalt);
+        }
+
+        Job job = starten(scene);
+        antworten(ex, 200, job.status().put("scene", hash));
+    }
+
+    // 每个图块一个任务，所有任务共用一个线程池
+    private Job starten(Scene scene) {
+        int width = scene.width(), height = scene.height();
+        if (width < 1 || height < 1 || width > MAX_SEITE || height > MAX_SEITE || (long) width * height > MAX_PIXEL) {
+            throw new IllegalArgumentException("image size out of range: " + width + "x" + height);
+        }
+        Job job = new Job(naechsteId.getAndIncrement(), scene.width(), scene.height());
+        jobs.put(job.id, job);
+        jobs.keySet().removeIf(id -> id <= job.id - MAX_JOBS);
+
+        SimpleRayTracer tracer = scene.rayTracer();
+        WavefrontRenderer renderer = new WavefrontRenderer(tracer);
+        renderer.setParallel(false); // 并行由图块提供
+        for (int y0 = 0; y0 < scene.height(); y0 += KACHEL) {
+            for (int x0 = 0; x0 < scene.width(); x0 += KACHEL) {
+                int x = x0, y = y0;
+                int breite = Math.min(KACHEL, scene.width() - x0);
+                int hoehe = Math.min(KACHEL, scene.height() - y0);
+                pool.execute(() -> {
+                    if (job.fehler != null) return;
+                    try {
+                        SimpleRayTracer.TraceResult[] ergebnis = renderer.traceTile(x, y, breite, hoehe);
+                        for (int i = 0; i < ergebnis.length; i++) {
+                            job.image.setPixel(x + i % breite, y + i / breite, ergebnis[i].color());
+                        }
+                    } catch (Throwable e) {
+                        // 也包括 Error（例如很深的场景的 StackOverflowError）：任务失败，服务继续运行
+                        job.fehler = e.toString();
+                        return;
+                    }
+                    if (job.fertig.incrementAndGet() == job.kacheln) {
+                        job.ende = System.nanoTime();
+                    }
+                });
+            }
+        }
+        return job;
+    }
+
+    private void bild(HttpExchange ex, Job job) throws IOException {
+        if (!job.isDone()) {
+            antworten(ex, 409, job.status());
+            return;
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        job.image.writePng(png);
+        ex.getResponseHeaders().set("Content-Type", "image/png");
+        senden(ex, 200, png.toByteArray());
+    }
+
+    private static void antworten(HttpExchange ex, int code, JSONObject antwort) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        senden(ex, code, (antwort.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void antworten(HttpExchange ex, int code, String meldung) throws IOException {
+        antworten(ex, code, new JSONObject().put("error", meldung));
+    }
+
+    private static void senden(HttpExchange ex, int code, byte[] daten) throws IOException {
+        ex.sendResponseHeaders(code, daten.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(daten);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cgg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import tools.Color;
+import tools.Scene;
+import tools.SceneLoader;
+import tools.SimpleRayTracer;
+import tools.WavefrontRenderer;
+
+
+/**
+ * 分布式渲染的工作进程：RenderWorker [端口] [地址]
+ *
+ * <p>
+ * 每个协调进程的连接是一个会话：先收到场景（内容哈希、文件内容、可选的相机），
+ * 然后依次收到图块，每个图块回复 RGB float 数据（按行，每个像素3个值）。
+ * 场景按哈希缓存（SceneCache，最近使用的 MAX_SCENES 个），同一个工作进程渲染下一帧或下一个任务时
+ * 不再解析和构建 Bvh。
+ * 一个图块内部由 WavefrontRenderer 按块并行，用满这台机器的所有核。
+ * 默认只监听本机（loopback）；连接没有认证，要让其他机器上的协调进程使用时明确给出地址。
+ *
+ * <p>
+ * 协议（DataOutputStream，大端）：
+ * <pre>
+ * SZENE  hash:UTF  länge:int  inhalt:byte[]  kamera:UTF（空 = 场景自己的相机）  width:int  height:int
+ *   hash 是 inhalt 的SHA-256，工作进程自己重新计算，不一致时结束会话；länge 最多 MAX_SZENE
+ * KACHEL id:int  x0:int  y0:int  breite:int  hoehe:int
+ *   回复 ERGEBNIS id:int  rgb:float[3·breite·hoehe]
+ * ENDE
+ * </pre>
+ */
+public class RenderWorker {
+    static final byte SZENE = 1;
+    static final byte KACHEL = 2;
+    static final byte ERGEBNIS = 3;
+    static final byte ENDE = 4;
+    static final int MAX_SZENE = 64 << 20; // 场景文件的最大字节数
+
+    private final SceneCache szenen = new SceneCache();
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9000;
+        InetAddress adresse = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        new RenderWorker().lauschen(new InetSocketAddress(adresse, port));
+    }
+
+    public void lauschen(InetSocketAddress adresse) throws IOException {
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(adresse);
+            System.out.println("render worker on " + adresse);
+            while (true) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> sitzung(socket), "worker-" + socket.getPort());
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    private void sitzung(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            WavefrontRenderer renderer = null;
+            while (true) {
+                byte typ = in.readByte();
+                if (typ == SZENE) {
+                    renderer = new WavefrontRenderer(szene(in).rayTracer());
+                } else if (typ == KACHEL) {
+                    if (renderer == null) {
+                        throw new IOException("tile before scene");
+                    }
+                    kachel(in, out, renderer);
+                } else if (typ == ENDE) {
+                    return;
+                } else {
+                    throw new IOException("unknown message " + typ);
+                }
+            }
+        } catch (EOFException e) {
+            // 协调进程关闭了连接
+        } catch (IOException | RuntimeException e) {
+            System.err.println("session failed: " + e);
+        }
+    }
+
+    private Scene szene(DataInputStream in) throws IOException {
+        String gesendet = in.readUTF();
+        int laenge = in.readInt();
+        if (laenge < 0 || laenge > MAX_SZENE) {
+            throw new IOException("scene size out of range: " + laenge);
+        }
+        byte[] inhalt = new byte[laenge];
+        in.readFully(inhalt);
+        String hash = SceneCache.hash(inhalt);
+        if (!hash.equals(gesendet)) {
+            throw new IOException("scene hash mismatch: sent " + gesendet + ", content " + hash);
+        }
+        String kamera = in.readUTF();
+        int width = in.readInt();
+        int height = in.readInt();
+
+        Scene scene = szenen.laden(hash, inhalt);
+        if (!kamera.isEmpty()) {
+            scene = scene.withCamera(SceneLoader.camera(kamera, width, height), width, height);
+        }
+        return scene;
+    }
+
+    private static void kachel(DataInputStream in, DataOutputStream out, WavefrontRenderer renderer)
+            throws IOException {
+        int id = in.readInt();
+        int x0 = in.readInt();
+        int y0 = in.readInt();
+        int breite = in.readInt();
+        int hoehe = in.readInt();
+
+        SimpleRayTracer.TraceResult[] ergebnis = renderer.traceTile(x0, y0, breite, hoehe);
+        ByteBuffer rgb = ByteBuffer.allocate(3 * Float.BYTES * ergebnis.length);
+        for (SimpleRayTracer.TraceResult r : ergebnis) {
+            Color c = r.color();
+            rgb.putFloat((float) c.r()).putFloat((float) c.g()).putFloat((float) c.b());
+        }
+        out.writeByte(ERGEBNIS);
+        out.writeInt(id);
+        out.write(rgb.array());
+        out.flush();
+    }
+}
@@ -0,0 +1,87 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import tools.Color;
+import tools.ImageWriter;
+
+/**
+ * RGBE（Ward, Radiance .hdr）格式的图像：三个8位尾数共用一个8位指数，4字节/像素。
+ *
+ * <p>
+ * 最亮的分量有8位精度（相对误差 &lt; 0.4%），同一个像素里比它暗很多的分量精度更低；
+ * 范围非常大（2^-128 到 2^127），所以适合保存HDR的显示输出，不适合累加。负值存为0。
+ */
+public class RgbeImage implements tools.Image {
+    private final int width;
+    private final int height;
+    private final int[] pixels; // R, G, B, E 各8位
+
+    public RgbeImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    @Override
+    public void setPixel(int x, int y, Color color) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        pixels[y * width + x] = encode(color.r(), color.g(), color.b());
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return Color.black;
+        }
+        int rgbe = pixels[y * width + x];
+        int e = rgbe & 0xff;
+        if (e == 0) {
+            return Color.black;
+        }
+        double f = Math.scalb(1.0, e - (128 + 8));
+        return new Color(((rgbe >>> 24) + 0.5) * f, (((rgbe >>> 16) & 0xff) + 0.5) * f,
+                         (((rgbe >>> 8) & 0xff) + 0.5) * f, 1);
+    }
+
+    // m = max(r, g, b) = f·2^e，f ∈ [0.5, 1)：尾数 = 分量·256/2^e
+    static int encode(double r, double g, double b) {
+        r = Math.max(0, r);
+        g = Math.max(0, g);
+        b = Math.max(0, b);
+        double m = Math.max(r, Math.max(g, b));
+        if (!(m >= 1e-32)) { // 也包括 NaN（色调映射后的黑色像素），写PNG时同样是黑色
+            return 0;
+        }
+        int e = Math.getExponent(m) + 1;
+        if (e > 127) {
+            e = 127;
+            double grenze = Math.scalb(255.0 / 256, 127); // 更大的值截断
+            r = Math.min(r, grenze);
+            g = Math.min(g, grenze);
+            b = Math.min(b, grenze);
+        }
+        double s = Math.scalb(256.0, -e);
+        return ((int) (r * s) << 24) | ((int) (g * s) << 16) | ((int) (b * s) << 8) | (e + 128);
+    }
+
+    public void writePng(String name) {
+        ImageWriter.writePng(name, this);
+    }
+
+    public void writePng(OutputStream out) throws IOException {
+        ImageWriter.writePng(out, this);
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+}
@@ -0,0 +1,61 @@
+package cgg;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import tools.ImageTexture;
+import tools.Scene;
+import tools.SceneLoader;
+
+
+/**
+ * 按内容哈希缓存的场景（RenderServer 和 RenderWorker 共用）：同样的内容不会再解析和构建 Bvh。
+ * 只保留最近使用的 MAX_SCENES 个，长时间运行的进程不会无限制地积累场景。
+ * 哈希总是由收到内容的进程自己计算（hash），不相信对方发来的哈希：否则错误或碰撞的哈希会取到别的场景。
+ * 场景引用的纹理文件不在内容里：有纹理文件改变时（ImageTexture.sharedChanged）清空缓存，
+ * 之后的请求重新解析场景并加载新的纹理。
+ */
+final class SceneCache {
+    static final int MAX_SCENES = 8;
+
+    private final Map<String, Scene> szenen = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Scene> aeltester) {
+            return size() > MAX_SCENES;
+        }
+    };
+
+    // 场景文件内容的SHA-256（十六进制）
+    static String hash(byte[] inhalt) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(inhalt));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 已经缓存的场景，没有时为 null
+    Scene suchen(String hash) {
+        synchronized (szenen) {
+            if (ImageTexture.sharedChanged()) {
+                szenen.clear();
+            }
+            return szenen.get(hash);
+        }
+    }
+
+    // 缓存的场景，还没有时解析 inhalt（hash 必须是 hash(inhalt)）
+    Scene laden(String hash, byte[] inhalt) {
+        Scene scene = suchen(hash);
+        if (scene != null) {
+            return scene;
+        }
+        scene = SceneLoader.load(inhalt); // 在锁外构建，其他请求不需要等待
+        synchronized (szenen) {
+            Scene vorhanden = szenen.putIfAbsent(hash, scene);
+            return vorhanden != null ? vorhanden : scene;
+        }
+    }
+}
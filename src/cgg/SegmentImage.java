@@ -0,0 +1,174 @@
+package cgg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import tools.Color;
+import tools.ImageWriter;
+import tools.Scene;
+import tools.StopWatch;
+import tools.WavefrontRenderer;
+
+/**
+ * 堆外的图像：像素（每个分量一个 double，和 cgg.Image 的布局相同）放在 MemorySegment 里，
+ * 不占Java堆，GC不需要扫描或复制它。海报大小的图像（比如 20000×14000 约6.7GB）不需要很大的堆。
+ *
+ * <p>
+ * 两种存储：
+ * <ul>
+ * <li>new SegmentImage(w, h)：本机内存，close() 时立即释放。和 direct buffer 一样受
+ *     -XX:MaxDirectMemorySize 限制（默认等于 -Xmx），需要时另外设置</li>
+ * <li>SegmentImage.mapped(文件, w, h)：内存映射的文件，由操作系统换入换出，可以比物理内存大；
+ *     close() 时写到磁盘，渲染完以后文件里是原始的 double 数据</li>
+ * </ul>
+ * 内存由共享的 Arena 管理，渲染线程可以同时写不同的像素（图块）。
+ * 写PNG/HDR时 ImageWriter 通过 getRow 按行读取，每行直接从 segment 复制，不复制整幅图像；
+ * PNG 也是逐行编码和压缩的（20000×14000 的PNG用 -Xmx64m 就可以写出）。
+ *
+ * <p>
+ * Foreign Memory API 在 Java 21 里还是预览功能：这个类（只有这个类）编译和运行都需要 --enable-preview。
+ * 项目的其他部分不引用它，没有这个选项也能编译；不需要堆外图像时可以不编译这个文件。
+ * 渲染：SegmentImage [--mapped] scene.json ...
+ */
+public class SegmentImage implements tools.Image, AutoCloseable {
+    private static final ValueLayout.OfDouble KOMPONENTE = ValueLayout.JAVA_DOUBLE;
+
+    private final int width;
+    private final int height;
+    private final Arena arena;
+    private final MemorySegment pixels;
+    private final boolean mapped;
+
+    /**
+     * 把场景渲染进堆外的图像，--mapped 时映射到 images/&lt;文件名&gt;.raw
+     */
+    public static void main(String[] args) {
+        boolean mapped = args.length > 0 && args[0].equals("--mapped");
+        if (args.length == (mapped ? 1 : 0)) {
+            System.err.println("usage: SegmentImage [--mapped] scene.json|scene.scene ...");
+            return;
+        }
+        for (int i = mapped ? 1 : 0; i < args.length; i++) {
+            Path datei = Path.of(args[i]);
+            String name = datei.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+            Scene scene = Scene.load(datei);
+            StopWatch uhr = new StopWatch();
+            try (SegmentImage image = mapped
+                     ? mapped(Path.of("images", name + ".raw"), scene.width(), scene.height())
+                     : new SegmentImage(scene.width(), scene.height())) {
+                new WavefrontRenderer(scene.rayTracer()).render(image, 64);
+                uhr.stop("render " + name);
+                image.writePng(name);
+            }
+        }
+    }
+
+    public SegmentImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.arena = Arena.ofShared();
+        this.pixels = arena.allocate(bytes(width, height), KOMPONENTE.byteAlignment()); // 已经清零
+        this.mapped = false;
+    }
+
+    private SegmentImage(int width, int height, Arena arena, MemorySegment pixels) {
+        this.width = width;
+        this.height = height;
+        this.arena = arena;
+        this.pixels = pixels;
+        this.mapped = true;
+    }
+
+    /**
+     * 映射到文件的图像。文件被重新创建（清零），大小是 24·width·height 字节。
+     */
+    public static SegmentImage mapped(Path datei, int width, int height) {
+        Arena arena = Arena.ofShared();
+        try {
+            Path ordner = datei.toAbsolutePath().getParent();
+            if (ordner != null) {
+                Files.createDirectories(ordner);
+            }
+            try (FileChannel kanal = FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // 映射在通道关闭后仍然有效，直到 arena 关闭
+                MemorySegment pixels = kanal.map(FileChannel.MapMode.READ_WRITE, 0, bytes(width, height), arena);
+                return new SegmentImage(width, height, arena, pixels);
+            }
+        } catch (IOException e) {
+            arena.close();
+            throw new UncheckedIOException("cannot map image " + datei, e);
+        }
+    }
+
+    public static long bytes(int width, int height) {
+        return 3L * width * height * KOMPONENTE.byteSize();
+    }
+
+    @Override
+    public void setPixel(int x, int y, Color color) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        long index = ((long) y * width + x) * 3;
+        pixels.setAtIndex(KOMPONENTE, index, color.r());
+        pixels.setAtIndex(KOMPONENTE, index + 1, color.g());
+        pixels.setAtIndex(KOMPONENTE, index + 2, color.b());
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return Color.black;
+        }
+        long index = ((long) y * width + x) * 3;
+        return new Color(pixels.getAtIndex(KOMPONENTE, index), pixels.getAtIndex(KOMPONENTE, index + 1),
+                         pixels.getAtIndex(KOMPONENTE, index + 2), 1);
+    }
+
+    // 一行直接从 segment 复制
+    @Override
+    public void getRow(int y, double[] row) {
+        MemorySegment.copy(pixels, KOMPONENTE, (long) y * width * 3 * KOMPONENTE.byteSize(), row, 0, width * 3);
+    }
+
+    public void writePng(String name) {
+        ImageWriter.writePng(name, this);
+    }
+
+    public void writePng(OutputStream out) throws IOException {
+        ImageWriter.writePng(out, this);
+    }
+
+    public void writeHdr(String name) {
+        ImageWriter.writeHdr(name, this);
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    /**
+     * 释放内存（映射的图像先写到磁盘）。之后不能再访问这个图像。
+     */
+    @Override
+    public void close() {
+        if (mapped) {
+            pixels.force();
+        }
+        arena.close();
+    }
+}
@@ -0,0 +1,86 @@
+package cgg;
+
+import java.util.Random;
+import tools.Affine;
+import tools.Hit;
+import tools.Mat44;
+import tools.Ray;
+import tools.StopWatch;
+import tools.Vec2;
+import tools.Vec3;
+
+// 比较 Mat44（Ray.transform / Hit.transform）和 Affine（transformRay / transformHit）
+// 变换射线和交点的速度：Group 求交时每条射线各做一次
+public class TransformBenchmark {
+
+    public static void main(String[] args) {
+        int n = 1 << 16;
+        int runden = 100;
+
+        Mat44 mat = Mat44.translate(1.5, -2.0, 0.5).multiply(Mat44.rotateY(0.7)).multiply(Mat44.rotateX(-0.3));
+        Mat44 inv = mat.invert();
+        Affine affin = Affine.of(mat);
+        Affine invAffin = Affine.of(inv);
+
+        Random random = new Random(42);
+        Ray[] rays = new Ray[n];
+        Hit[] hits = new Hit[n];
+        for (int i = 0; i < n; i++) {
+            Vec3 o = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            Vec3 d = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            rays[i] = new Ray(o, d, 0.001, Double.POSITIVE_INFINITY);
+            hits[i] = new Hit(random.nextDouble(), o, d.normalize(), null, new Vec2(0, 0));
+        }
+
+        // 两条路径的结果应该相同
+        double abweichung = 0;
+        for (int i = 0; i < n; i++) {
+            Ray a = rays[i].transform(inv);
+            Ray b = invAffin.transformRay(rays[i]);
+            abweichung = Math.max(abweichung, a.origin().subtract(b.origin()).length());
+            abweichung = Math.max(abweichung, a.direction().subtract(b.direction()).length());
+            Hit h = hits[i].transform(mat);
+            Hit k = affin.transformHit(hits[i], invAffin);
+            abweichung = Math.max(abweichung, h.position().subtract(k.position()).length());
+            abweichung = Math.max(abweichung, h.normal().subtract(k.normal()).length());
+        }
+        System.out.format("max difference: %.3g\n", abweichung);
+
+        // 先各跑一遍让JIT编译，再计时
+        double summe = mat44(rays, hits, mat, inv, runden) + affine(rays, hits, affin, invAffin, runden);
+
+        StopWatch uhr = new StopWatch();
+        summe += mat44(rays, hits, mat, inv, runden);
+        uhr.stop(String.format("Mat44  %d rays + hits", (long) n * runden));
+
+        uhr = new StopWatch();
+        summe += affine(rays, hits, affin, invAffin, runden);
+        uhr.stop(String.format("Affine %d rays + hits", (long) n * runden));
+
+        System.out.println("checksum: " + summe); // 防止结果被优化掉
+    }
+
+    private static double mat44(Ray[] rays, Hit[] hits, Mat44 mat, Mat44 inv, int runden) {
+        double summe = 0;
+        for (int r = 0; r < runden; r++) {
+            for (int i = 0; i < rays.length; i++) {
+                Ray lokal = rays[i].transform(inv);
+                Hit welt = hits[i].transform(mat);
+                summe += lokal.direction().x() + welt.normal().y();
+            }
+        }
+        return summe;
+    }
+
+    private static double affine(Ray[] rays, Hit[] hits, Affine affin, Affine invAffin, int runden) {
+        double summe = 0;
+        for (int r = 0; r < runden; r++) {
+            for (int i = 0; i < rays.length; i++) {
+                Ray lokal = invAffin.transformRay(rays[i]);
+                Hit welt = affin.transformHit(hits[i], invAffin);
+                summe += lokal.direction().x() + welt.normal().y();
+            }
+        }
+        return summe;
+    }
+}
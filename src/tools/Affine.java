@@ -0,0 +1,131 @@
+package tools;
+
+/**
+ * 仿射变换（3x4矩阵，最后一行固定为 0 0 0 1）。
+ *
+ * <p>
+ * 和 Mat44 不同，12个元素都是 final 字段而不是数组：没有下标检查和间接访问，
+ * JIT 可以把它们留在寄存器里。transformRay / transformHit 把点和方向（法向量）
+ * 的变换合在一起，直接用分量计算，中间不创建 Vec3。
+ * Group 用它变换射线和交点，Mat44 仍然用来构造和组合变换。
+ */
+public final class Affine {
+    public static final Affine identity = new Affine(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0);
+
+    // m<行><列>，第4列是平移（包内可见，Transform 按元素分类）
+    final double m00, m01, m02, m03;
+    final double m10, m11, m12, m13;
+    final double m20, m21, m22, m23;
+
+    public Affine(double m00, double m01, double m02, double m03,
+                  double m10, double m11, double m12, double m13,
+                  double m20, double m21, double m22, double m23) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+    }
+
+    // Mat44 的前三行（和 Ray.transform / Hit.transform 的约定相同：get(列, 行)）
+    public static Affine of(Mat44 m) {
+        return new Affine(m.get(0, 0), m.get(1, 0), m.get(2, 0), m.get(3, 0),
+                          m.get(0, 1), m.get(1, 1), m.get(2, 1), m.get(3, 1),
+                          m.get(0, 2), m.get(1, 2), m.get(2, 2), m.get(3, 2));
+    }
+
+    /**
+     * 逆变换：3x3部分用伴随矩阵求逆（不要求是旋转），平移为 -A⁻¹·t
+     */
+    public Affine invert() {
+        double c00 = m11 * m22 - m12 * m21;
+        double c01 = m02 * m21 - m01 * m22;
+        double c02 = m01 * m12 - m02 * m11;
+        double c10 = m12 * m20 - m10 * m22;
+        double c11 = m00 * m22 - m02 * m20;
+        double c12 = m02 * m10 - m00 * m12;
+        double c20 = m10 * m21 - m11 * m20;
+        double c21 = m01 * m20 - m00 * m21;
+        double c22 = m00 * m11 - m01 * m10;
+        double det = m00 * c00 + m01 * c10 + m02 * c20;
+        if (det == 0) {
+            throw new RuntimeException("singular matrix is not invertible");
+        }
+        double s = 1 / det;
+        double i00 = c00 * s, i01 = c01 * s, i02 = c02 * s;
+        double i10 = c10 * s, i11 = c11 * s, i12 = c12 * s;
+        double i20 = c20 * s, i21 = c21 * s, i22 = c22 * s;
+        return new Affine(i00, i01, i02, -(i00 * m03 + i01 * m13 + i02 * m23),
+                          i10, i11, i12, -(i10 * m03 + i11 * m13 + i12 * m23),
+                          i20, i21, i22, -(i20 * m03 + i21 * m13 + i22 * m23));
+    }
+
+    // 逐元素线性插值（运动的组，和 Mat44.interpolate 相同）
+    public static Affine interpolate(Affine a, Affine b, double t) {
+        double s = 1 - t;
+        return new Affine(s * a.m00 + t * b.m00, s * a.m01 + t * b.m01, s * a.m02 + t * b.m02, s * a.m03 + t * b.m03,
+                          s * a.m10 + t * b.m10, s * a.m11 + t * b.m11, s * a.m12 + t * b.m12, s * a.m13 + t * b.m13,
+                          s * a.m20 + t * b.m20, s * a.m21 + t * b.m21, s * a.m22 + t * b.m22, s * a.m23 + t * b.m23);
+    }
+
+    public Vec3 transformPoint(Vec3 p) {
+        double x = p.x(), y = p.y(), z = p.z();
+        return new Vec3(m00 * x + m01 * y + m02 * z + m03,
+                        m10 * x + m11 * y + m12 * z + m13,
+                        m20 * x + m21 * y + m22 * z + m23);
+    }
+
+    public Vec3 transformVector(Vec3 v) {
+        double x = v.x(), y = v.y(), z = v.z();
+        return new Vec3(m00 * x + m01 * y + m02 * z,
+                        m10 * x + m11 * y + m12 * z,
+                        m20 * x + m21 * y + m22 * z);
+    }
+
+    /**
+     * 变换射线：起点按点变换，方向按向量变换，tMin/tMax/时间不变。
+     * 方向不归一化，所以t在两个坐标系中相同（ray.transform(mat) 会归一化方向，
+     * 有缩放时t不一致）；没有缩放时两者相同。
+     */
+    public Ray transformRay(Ray ray) {
+        Vec3 o = ray.origin();
+        Vec3 d = ray.direction();
+        double ox = o.x(), oy = o.y(), oz = o.z();
+        double dx = d.x(), dy = d.y(), dz = d.z();
+        Vec3 origin = new Vec3(m00 * ox + m01 * oy + m02 * oz + m03,
+                               m10 * ox + m11 * oy + m12 * oz + m13,
+                               m20 * ox + m21 * oy + m22 * oz + m23);
+        Vec3 direction = new Vec3(m00 * dx + m01 * dy + m02 * dz,
+                                  m10 * dx + m11 * dy + m12 * dz,
+                                  m20 * dx + m21 * dy + m22 * dz);
+        return Ray.unnormalisiert(origin, direction, ray.tmin(), ray.tmax(), ray.time());
+    }
+
+    /**
+     * 把局部坐标系的交点变换到这个变换的目标坐标系：位置按点变换，
+     * 法向量乘以逆矩阵的转置（inverse 是这个变换的逆，由调用方预先算好）并归一化。
+     * t、形状和uv不变，结果和 hit.transform(mat) 相同。
+     */
+    public Hit transformHit(Hit hit, Affine inverse) {
+        Vec3 p = hit.position();
+        Vec3 n = hit.normal();
+        double px = p.x(), py = p.y(), pz = p.z();
+        double nx = n.x(), ny = n.y(), nz = n.z();
+        Vec3 position = new Vec3(m00 * px + m01 * py + m02 * pz + m03,
+                                 m10 * px + m11 * py + m12 * pz + m13,
+                                 m20 * px + m21 * py + m22 * pz + m23);
+        double wx = inverse.m00 * nx + inverse.m10 * ny + inverse.m20 * nz;
+        double wy = inverse.m01 * nx + inverse.m11 * ny + inverse.m21 * nz;
+        double wz = inverse.m02 * nx + inverse.m12 * ny + inverse.m22 * nz;
+        double laenge = Math.sqrt(wx * wx + wy * wy + wz * wz);
+        double s = laenge == 0 ? 0 : 1 / laenge;
+        return new Hit(hit.t(), position, new Vec3(wx * s, wy * s, wz * s), hit.shape(), hit.uv());
+    }
+
+    // 转换回 Mat44（列主序，最后一行 0 0 0 1）
+    public Mat44 toMat44() {
+        Mat44 m = new Mat44();
+        m.set(0, 0, m00); m.set(1, 0, m01); m.set(2, 0, m02); m.set(3, 0, m03);
+        m.set(0, 1, m10); m.set(1, 1, m11); m.set(2, 1, m12); m.set(3, 1, m13);
+        m.set(0, 2, m20); m.set(1, 2, m21); m.set(2, 2, m22); m.set(3, 2, m23);
+        return m;
+    }
+}
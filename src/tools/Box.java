@@ -0,0 +1,141 @@
+package tools;
+
+/**
+ * 轴对齐的长方体（解析求交）。
+ *
+ * <p>
+ * 求交用slab方法：射线依次和 x、y、z 三对平行平面求参数区间，三个区间的交集非空就击中，
+ * 进入点所在的轴决定是哪个面、法向量朝哪边。一次求交只有几次乘法和比较，
+ * 不需要为每个面变换射线。方向不要求是单位向量（Group 传入的局部射线）。
+ *
+ * <p>
+ * 射线起点在盒子里面时返回离开的点。法向量总是朝外（和 Sphere 一样）。
+ * UV：侧面 u 沿水平方向，v 从上到下；上下两面 u 沿x，v 沿z，都在 [0,1] 内。
+ */
+public class Box implements Shape {
+    private final Vec3 min;
+    private final Vec3 max;
+    private final Color color;
+    private Material material; // 物理材质（可选，PathTracer使用）
+
+    public Box(Vec3 min, Vec3 max, Color color) {
+        this.min = min;
+        this.max = max;
+        this.color = color;
+    }
+
+    // 以原点为中心，边长分别为 xSize, ySize, zSize
+    public Box(double xSize, double ySize, double zSize, Color color) {
+        this(new Vec3(-xSize / 2, -ySize / 2, -zSize / 2), new Vec3(xSize / 2, ySize / 2, zSize / 2), color);
+    }
+
+    @Override
+    public Hit intersect(Ray ray) {
+        Vec3 o = ray.origin();
+        Vec3 d = ray.direction();
+
+        // x
+        double ix = 1 / d.x();
+        double t0 = (min.x() - o.x()) * ix;
+        double t1 = (max.x() - o.x()) * ix;
+        double nah = Math.min(t0, t1);
+        double fern = Math.max(t0, t1);
+        int achseNah = 0;
+        int achseFern = 0;
+
+        // y
+        double iy = 1 / d.y();
+        t0 = (min.y() - o.y()) * iy;
+        t1 = (max.y() - o.y()) * iy;
+        double a = Math.min(t0, t1);
+        double b = Math.max(t0, t1);
+        if (a > nah) { nah = a; achseNah = 1; }
+        if (b < fern) { fern = b; achseFern = 1; }
+
+        // z
+        double iz = 1 / d.z();
+        t0 = (min.z() - o.z()) * iz;
+        t1 = (max.z() - o.z()) * iz;
+        a = Math.min(t0, t1);
+        b = Math.max(t0, t1);
+        if (a > nah) { nah = a; achseNah = 2; }
+        if (b < fern) { fern = b; achseFern = 2; }
+
+        if (!(nah <= fern)) return null; // 区间为空（NaN 也算未击中）
+
+        double t;
+        int achse;
+        boolean eintritt;
+        if (ray.isWithinBounds(nah)) {
+            t = nah;
+            achse = achseNah;
+            eintritt = true;
+        } else if (ray.isWithinBounds(fern)) {
+            t = fern;
+            achse = achseFern;
+            eintritt = false;
+        } else {
+            return null;
+        }
+
+        double px = o.x() + t * d.x();
+        double py = o.y() + t * d.y();
+        double pz = o.z() + t * d.z();
+
+        // 进入的面法向量和射线方向相反，离开的面和射线方向相同
+        double richtung = switch (achse) {
+            case 0 -> d.x();
+            case 1 -> d.y();
+            default -> d.z();
+        };
+        double vorzeichen = (richtung < 0) == eintritt ? 1 : -1;
+
+        Vec3 normal;
+        Vec2 uv;
+        double sx = max.x() - min.x();
+        double sy = max.y() - min.y();
+        double sz = max.z() - min.z();
+        switch (achse) {
+            case 0:
+                normal = new Vec3(vorzeichen, 0, 0);
+                uv = new Vec2((pz - min.z()) / sz, (max.y() - py) / sy);
+                break;
+            case 1:
+                normal = new Vec3(0, vorzeichen, 0);
+                uv = new Vec2((px - min.x()) / sx, (pz - min.z()) / sz);
+                break;
+            default:
+                normal = new Vec3(0, 0, vorzeichen);
+                uv = new Vec2((px - min.x()) / sx, (max.y() - py) / sy);
+                break;
+        }
+        return new Hit(t, new Vec3(px, py, pz), normal, this, uv);
+    }
+
+    @Override
+    public Color getColor() {
+        return color;
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        return new BoundingBox(min, max);
+    }
+
+    public Vec3 min() {
+        return min;
+    }
+
+    public Vec3 max() {
+        return max;
+    }
+}
@@ -0,0 +1,332 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 包围体层次结构（BVH）：按包围盒把一组形状组织成二叉树，射线只测试它穿过的包围盒里的形状。
+ *
+ * <p>
+ * 构建：每次按形状中心分布最长的轴排序，从中间分成两半，直到一个叶子最多 MAX_BLATT 个形状。
+ * 节点按深度优先存放在基本类型数组里（左子节点紧跟在父节点后面），
+ * n 个形状的子树最多占 2n-1 个节点，右子树从 k + 2·(左边的形状数) 开始，
+ * 所以两个子树的位置在构建前就确定了，可以并行构建（ForkJoin，小于 PARALLEL_AB 个形状的子树在当前线程构建）。
+ * 遍历时用一个小栈，先进入射线方向上较近的子节点，已经找到的最近交点缩短后面的包围盒测试。
+ * 没有有限包围盒的形状（无限平面）不放进树里，每条射线都测试。
+ *
+ * <p>
+ * 射线的方向不需要是单位向量，所以 BVH 可以作为 Instance 的原型（局部坐标系中的射线）。
+ * 两层结构：每个原型有自己的 BVH（底层），场景中的 Instance 再组成一个 BVH（顶层）。
+ *
+ * <p>
+ * 树中的形状移动以后调用 refit：树的结构不变，只重新计算节点的包围盒。
+ */
+public class Bvh implements Shape {
+    private static final int MAX_BLATT = 4;
+    private static final int PARALLEL_AB = 1024;
+
+    private final Shape[] formen;       // 叶子中的形状，按节点顺序排列
+    private final Shape[] unbegrenzt;   // 没有有限包围盒的形状
+    private final double[] box;         // 每个节点6个值：min xyz, max xyz
+    private final int[] erster;         // 叶子：第一个形状的下标；内部节点：右子节点的下标
+    private final int[] anzahl;         // 叶子：形状数（> 0）；内部节点：0
+    private final byte[] achse;         // 内部节点的分割轴
+    private final int knoten;           // 节点数组的长度（中间可能有空位）
+    private BoundingBox bounds;
+
+    // 构建时的临时数据
+    private record Eintrag(Shape shape, BoundingBox box, double[] mitte) {}
+
+    public Bvh(List<? extends Shape> shapes) {
+        List<Eintrag> begrenzt = new ArrayList<>();
+        List<Shape> rest = new ArrayList<>();
+        BoundingBox alles = BoundingBox.empty;
+        for (Shape s : shapes) {
+            if (s == null) continue;
+            BoundingBox b = s.bounds();
+            if (b.equals(BoundingBox.everything)) {
+                rest.add(s);
+            } else if (!b.equals(BoundingBox.empty)) {
+                Vec3 m = b.min().add(b.max()).multiply(0.5);
+                begrenzt.add(new Eintrag(s, b, new double[] {m.x(), m.y(), m.z()}));
+                alles = alles.extend(b);
+            }
+        }
+        this.unbegrenzt = rest.toArray(new Shape[0]);
+        this.bounds = rest.isEmpty() ? alles : BoundingBox.everything;
+
+        Eintrag[] eintraege = begrenzt.toArray(new Eintrag[0]);
+        int maxKnoten = Math.max(1, 2 * eintraege.length - 1);
+        this.formen = new Shape[eintraege.length];
+        this.box = new double[6 * maxKnoten];
+        this.erster = new int[maxKnoten];
+        this.anzahl = new int[maxKnoten];
+        this.achse = new byte[maxKnoten];
+        this.knoten = eintraege.length == 0 ? 0 : maxKnoten;
+        if (eintraege.length > 0) {
+            new Aufbau(eintraege, 0, eintraege.length, 0).invoke();
+        }
+    }
+
+    // 为 eintraege[von, bis) 建立子树，根节点的下标为 k；大的子树分成两个并行的任务
+    // （ForkJoinTask 是 Serializable，但这个任务从不被序列化）
+    @SuppressWarnings("serial")
+    private final class Aufbau extends RecursiveAction {
+        private final Eintrag[] e;
+        private final int von, bis, k;
+
+        Aufbau(Eintrag[] e, int von, int bis, int k) {
+            this.e = e;
+            this.von = von;
+            this.bis = bis;
+            this.k = k;
+        }
+
+        @Override
+        protected void compute() {
+            int mitte = teilen(e, von, bis, k);
+            if (mitte < 0) return;
+            int rechts = k + 2 * (mitte - von);
+            if (bis - von < PARALLEL_AB) {
+                new Aufbau(e, von, mitte, k + 1).compute();
+                new Aufbau(e, mitte, bis, rechts).compute();
+            } else {
+                invokeAll(new Aufbau(e, von, mitte, k + 1), new Aufbau(e, mitte, bis, rechts));
+            }
+        }
+    }
+
+    // 计算节点 k 的包围盒；叶子直接填好并返回 -1，否则按分割轴排序并返回分割位置
+    private int teilen(Eintrag[] e, int von, int bis, int k) {
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        double[] cMin = min.clone();
+        double[] cMax = max.clone();
+        for (int i = von; i < bis; i++) {
+            BoundingBox b = e[i].box();
+            min[0] = Math.min(min[0], b.min().x());
+            min[1] = Math.min(min[1], b.min().y());
+            min[2] = Math.min(min[2], b.min().z());
+            max[0] = Math.max(max[0], b.max().x());
+            max[1] = Math.max(max[1], b.max().y());
+            max[2] = Math.max(max[2], b.max().z());
+            for (int a = 0; a < 3; a++) {
+                cMin[a] = Math.min(cMin[a], e[i].mitte()[a]);
+                cMax[a] = Math.max(cMax[a], e[i].mitte()[a]);
+            }
+        }
+        for (int a = 0; a < 3; a++) {
+            box[6 * k + a] = min[a];
+            box[6 * k + 3 + a] = max[a];
+        }
+
+        // 中心分布最长的轴
+        int teilung = 0;
+        for (int a = 1; a < 3; a++) {
+            if (cMax[a] - cMin[a] > cMax[teilung] - cMin[teilung]) teilung = a;
+        }
+
+        if (bis - von <= MAX_BLATT || cMax[teilung] - cMin[teilung] <= 0) {
+            for (int i = von; i < bis; i++) {
+                formen[i] = e[i].shape();
+            }
+            erster[k] = von;
+            anzahl[k] = bis - von;
+            return -1;
+        }
+
+        final int sortAchse = teilung;
+        Arrays.sort(e, von, bis, Comparator.comparingDouble(x -> x.mitte()[sortAchse]));
+        int mitte = (von + bis) >>> 1;
+
+        achse[k] = (byte) teilung;
+        anzahl[k] = 0;
+        erster[k] = k + 2 * (mitte - von);
+        return mitte;
+    }
+
+    @Override
+    public Hit intersect(Ray ray) {
+        Hit naechster = null;
+        double tMax = ray.tmax();
+
+        for (Shape s : unbegrenzt) {
+            Hit hit = s.intersect(ray);
+            if (hit != null && ray.isWithinBounds(hit.t()) && hit.t() < tMax) {
+                tMax = hit.t();
+                naechster = hit;
+            }
+        }
+        if (knoten == 0) return naechster;
+
+        Vec3 o = ray.origin();
+        Vec3 d = ray.direction();
+        double ox = o.x(), oy = o.y(), oz = o.z();
+        double ix = 1 / d.x(), iy = 1 / d.y(), iz = 1 / d.z();
+        double tMin = ray.tmin();
+
+        int[] stapel = new int[64];
+        int sp = 0;
+        int k = 0;
+        while (true) {
+            if (trifft(k, ox, oy, oz, ix, iy, iz, tMin, tMax)) {
+                int n = anzahl[k];
+                if (n > 0) {
+                    for (int i = erster[k], ende = erster[k] + n; i < ende; i++) {
+                        Hit hit = formen[i].intersect(ray);
+                        if (hit != null && ray.isWithinBounds(hit.t()) && hit.t() < tMax) {
+                            tMax = hit.t();
+                            naechster = hit;
+                        }
+                    }
+                } else {
+                    // 先进入射线方向上较近的子节点
+                    int a = achse[k];
+                    if (a == 0 ? ix < 0 : a == 1 ? iy < 0 : iz < 0) {
+                        stapel[sp++] = k + 1;
+                        k = erster[k];
+                    } else {
+                        stapel[sp++] = erster[k];
+                        k = k + 1;
+                    }
+                    continue;
+                }
+            }
+            if (sp == 0) break;
+            k = stapel[--sp];
+        }
+        return naechster;
+    }
+
+    /**
+     * 阴影射线：返回任意一个在射线区间内被击中的叶子形状（不是最近的），没有时返回null。
+     * 叶子和 BVH 在同一个坐标系里（图元或 Instance），可以直接再用同一种射线测试；
+     * 嵌套的 BVH 继续向下找它的叶子。
+     */
+    public Shape verdecker(Ray ray) {
+        for (Shape s : unbegrenzt) {
+            Shape blatt = blattTreffer(s, ray);
+            if (blatt != null) return blatt;
+        }
+        if (knoten == 0) return null;
+
+        Vec3 o = ray.origin();
+        Vec3 d = ray.direction();
+        double ox = o.x(), oy = o.y(), oz = o.z();
+        double ix = 1 / d.x(), iy = 1 / d.y(), iz = 1 / d.z();
+        double tMin = ray.tmin();
+        double tMax = ray.tmax();
+
+        int[] stapel = new int[64];
+        int sp = 0;
+        int k = 0;
+        while (true) {
+            if (trifft(k, ox, oy, oz, ix, iy, iz, tMin, tMax)) {
+                int n = anzahl[k];
+                if (n > 0) {
+                    for (int i = erster[k], ende = erster[k] + n; i < ende; i++) {
+                        Shape blatt = blattTreffer(formen[i], ray);
+                        if (blatt != null) return blatt;
+                    }
+                } else {
+                    stapel[sp++] = erster[k];
+                    k = k + 1;
+                    continue;
+                }
+            }
+            if (sp == 0) break;
+            k = stapel[--sp];
+        }
+        return null;
+    }
+
+    private static Shape blattTreffer(Shape s, Ray ray) {
+        if (s instanceof Bvh bvh) {
+            return bvh.verdecker(ray);
+        }
+        Hit hit = s.intersect(ray);
+        return hit != null && ray.isWithinBounds(hit.t()) ? s : null;
+    }
+
+    /**
+     * 形状移动或改变之后重新计算所有节点的包围盒。形状在叶子中的划分不变：
+     * 结果总是正确的，只是移动很远的形状会让遍历变慢，那时应该重新构建。
+     */
+    public void refit() {
+        if (knoten == 0) return;
+        refit(0);
+        if (unbegrenzt.length == 0) {
+            bounds = new BoundingBox(new Vec3(box[0], box[1], box[2]), new Vec3(box[3], box[4], box[5]));
+        }
+    }
+
+    // 先计算子节点，再取它们的并集
+    private void refit(int k) {
+        int b = 6 * k;
+        for (int a = 0; a < 3; a++) {
+            box[b + a] = Double.POSITIVE_INFINITY;
+            box[b + 3 + a] = Double.NEGATIVE_INFINITY;
+        }
+        if (anzahl[k] > 0) {
+            for (int i = erster[k], ende = erster[k] + anzahl[k]; i < ende; i++) {
+                BoundingBox f = formen[i].bounds();
+                erweitern(b, f.min().x(), f.min().y(), f.min().z(), f.max().x(), f.max().y(), f.max().z());
+            }
+        } else {
+            for (int kind : new int[] {k + 1, erster[k]}) {
+                refit(kind);
+                int c = 6 * kind;
+                erweitern(b, box[c], box[c + 1], box[c + 2], box[c + 3], box[c + 4], box[c + 5]);
+            }
+        }
+    }
+
+    private void erweitern(int b, double x0, double y0, double z0, double x1, double y1, double z1) {
+        box[b] = Math.min(box[b], x0);
+        box[b + 1] = Math.min(box[b + 1], y0);
+        box[b + 2] = Math.min(box[b + 2], z0);
+        box[b + 3] = Math.max(box[b + 3], x1);
+        box[b + 4] = Math.max(box[b + 4], y1);
+        box[b + 5] = Math.max(box[b + 5], z1);
+    }
+
+    // 射线在 [tMin, tMax] 内是否穿过节点 k 的包围盒（slab方法）
+    private boolean trifft(int k, double ox, double oy, double oz,
+                           double ix, double iy, double iz, double tMin, double tMax) {
+        int b = 6 * k;
+        double t0 = (box[b] - ox) * ix;
+        double t1 = (box[b + 3] - ox) * ix;
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        t0 = (box[b + 1] - oy) * iy;
+        t1 = (box[b + 4] - oy) * iy;
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        t0 = (box[b + 2] - oz) * iz;
+        t1 = (box[b + 5] - oz) * iz;
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        return tMin <= tMax;
+    }
+
+    // BVH本身没有颜色，交点中记录的是叶子形状
+    @Override
+    public Color getColor() {
+        return null;
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        return bounds;
+    }
+
+    // 所有形状（树中的和无限的）
+    public List<Shape> getShapes() {
+        List<Shape> alle = new ArrayList<>(Arrays.asList(formen));
+        alle.addAll(Arrays.asList(unbegrenzt));
+        return alle;
+    }
+}
@@ -0,0 +1,204 @@
+package tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PathTracer 的检查点：内存映射的文件，按行块保存累加缓冲区。
+ *
+ * <p>
+ * 每个行块在文件里有两个槽位和一个状态（int：有效的槽位和它包含的遍数）。
+ * 一个块完成一遍后，累加值先写进另一个（无效的）槽位，最后写状态，切换到新的槽位。
+ * 状态是一个对齐的int，读回的要么是旧值要么是新值：进程无论在哪一步中断，
+ * 恢复时每个块读到的都是某一遍完整结束时的累加值和与它一致的遍数，写了一半的槽位不会被读到。
+ *
+ * <p>
+ * 恢复后完整的遍数是所有块中最小的遍数；已经多完成了一遍的块在下一遍中跳过，
+ * 其余的块重新追踪这一遍（随机流由种子、块和遍确定，结果和没有中断时相同）。
+ * 写进映射的数据在进程崩溃后还在操作系统的页缓存里；每隔一段时间调用 force() 写到磁盘。
+ * 整台机器崩溃（断电）时页面写回磁盘的顺序不确定，这种情况不保证能恢复。
+ *
+ * <p>
+ * 一个 MappedByteBuffer 最多2GB，所以槽位分成几个区域分别映射（每个区域最多 MAX_REGION 字节，
+ * 只包含完整的槽位），海报大小的图像的检查点也可以超过2GB。
+ *
+ * <pre>
+ * 0   MAGIC:int  VERSION:int  width:int  height:int  blockHoehe:int  seed:long  szene:long
+ * 64  状态:int[bloecke]（遍数 &lt;&lt; 1 | 槽位，补齐到8字节）
+ *     槽位:double[2·bloecke][3·width·blockHoehe]（块 b 的槽位 s 是第 2b+s 个）
+ * </pre>
+ */
+final class Checkpoint implements AutoCloseable {
+    private static final int MAGIC = 0x434B5054; // "CKPT"
+    private static final int VERSION = 3;
+    private static final int KOPF = 64;
+    private static final long MAX_REGION = 1L << 30;
+
+    private final FileChannel kanal;
+    private final MappedByteBuffer karte;
+    private final int bloecke;
+    private final int width;
+    private final int height;
+    private final int blockHoehe;
+    private final MappedByteBuffer[] regionen;
+    private final DoubleBuffer[] slots;   // 每个区域的 double 视图
+    private final int slotsProRegion;
+    private final boolean passt; // 文件里原来就是同一幅图像的检查点
+
+    private final long intervall;
+    private final AtomicLong letzteSicherung = new AtomicLong(System.nanoTime());
+
+    /**
+     * 打开（或创建）检查点文件。只有要继续（fortsetzen）并且图像大小、行块高度、种子和场景的哈希
+     * 都相同时才沿用文件里的数据，否则重新初始化（改过的场景不会和旧的累加值混在一起）。
+     */
+    Checkpoint(Path datei, int width, int height, int blockHoehe, long seed, long szene, double sekunden,
+               boolean fortsetzen) {
+        this.width = width;
+        this.height = height;
+        this.blockHoehe = blockHoehe;
+        this.bloecke = (height + blockHoehe - 1) / blockHoehe;
+        this.intervall = (long) (sekunden * 1e9);
+        long slotsStart = KOPF + ((Integer.BYTES * (long) bloecke + 7) & ~7L);
+        long slotBytes = (long) slotLaenge() * Double.BYTES;
+        if (slotBytes > MAX_REGION) {
+            throw new IllegalArgumentException("image too wide for a checkpoint: " + width + " pixels");
+        }
+        this.slotsProRegion = (int) (MAX_REGION / slotBytes);
+        int anzahlSlots = 2 * bloecke;
+        this.regionen = new MappedByteBuffer[(anzahlSlots + slotsProRegion - 1) / slotsProRegion];
+        this.slots = new DoubleBuffer[regionen.length];
+        try {
+            Path ordner = datei.toAbsolutePath().getParent();
+            if (ordner != null) {
+                Files.createDirectories(ordner);
+            }
+            kanal = FileChannel.open(datei, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                     StandardOpenOption.WRITE);
+            karte = kanal.map(FileChannel.MapMode.READ_WRITE, 0, slotsStart);
+            for (int r = 0; r < regionen.length; r++) {
+                int n = Math.min(slotsProRegion, anzahlSlots - r * slotsProRegion);
+                regionen[r] = kanal.map(FileChannel.MapMode.READ_WRITE, slotsStart + r * slotsProRegion * slotBytes,
+                                        n * slotBytes);
+                slots[r] = regionen[r].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open checkpoint " + datei, e);
+        }
+        karte.order(ByteOrder.nativeOrder());
+
+        passt = fortsetzen && karte.getInt(0) == MAGIC && karte.getInt(4) == VERSION
+                && karte.getInt(8) == width && karte.getInt(12) == height
+                && karte.getInt(16) == blockHoehe && karte.getLong(20) == seed
+                && karte.getLong(28) == szene;
+        if (!passt) {
+            // 状态全为0（0遍，槽位0）就是有效的空检查点，槽位本身不需要清零
+            karte.putInt(0, 0); // 重写期间文件头无效
+            for (int b = 0; b < bloecke; b++) {
+                karte.putInt(KOPF + Integer.BYTES * b, 0);
+            }
+            karte.putInt(4, VERSION);
+            karte.putInt(8, width);
+            karte.putInt(12, height);
+            karte.putInt(16, blockHoehe);
+            karte.putLong(20, seed);
+            karte.putLong(28, szene);
+            karte.putInt(0, MAGIC); // 最后写：到这里文件头才有效
+            karte.force();
+        }
+    }
+
+    // 一个槽位的 double 个数（最后一块也按完整的高度分配）
+    private int slotLaenge() {
+        return 3 * width * blockHoehe;
+    }
+
+    // 第 i 个槽位所在区域的视图
+    private DoubleBuffer region(int i) {
+        return slots[i / slotsProRegion];
+    }
+
+    // 第 i 个槽位在它的区域里的位置（double 的下标）
+    private int start(int i) {
+        return (i % slotsProRegion) * slotLaenge();
+    }
+
+    // 文件里是否有同一幅图像的检查点
+    boolean passt() {
+        return passt;
+    }
+
+    // 块 b 已经保存的遍数
+    int passes(int b) {
+        return karte.getInt(KOPF + Integer.BYTES * b) >>> 1;
+    }
+
+    /**
+     * 把每个块的有效槽位读进累加缓冲区
+     *
+     * @return 完整的遍数（所有块中最小的遍数）
+     */
+    int laden(double[] akk) {
+        int minimum = Integer.MAX_VALUE;
+        for (int b = 0; b < bloecke; b++) {
+            int zustand = karte.getInt(KOPF + Integer.BYTES * b);
+            int n = zustand >>> 1;
+            minimum = Math.min(minimum, n);
+            if (n > 0) {
+                int von = b * blockHoehe;
+                int laenge = 3 * (Math.min(height, von + blockHoehe) - von) * width;
+                int i = 2 * b + (zustand & 1);
+                region(i).get(start(i), akk, 3 * von * width, laenge);
+            }
+        }
+        return bloecke == 0 ? 0 : minimum;
+    }
+
+    /**
+     * 保存行块 b（行 [von, bis)），累加值包含 passes 遍：先写无效的槽位，最后切换状态。
+     * 不同的块写不同的区域，可以并发调用。
+     */
+    void blockSpeichern(int b, int von, int bis, int passes, double[] akk) {
+        int index = KOPF + Integer.BYTES * b;
+        int neu = 1 - (karte.getInt(index) & 1);
+        int i = 2 * b + neu;
+        region(i).put(start(i), akk, 3 * von * width, 3 * (bis - von) * width);
+        karte.putInt(index, passes << 1 | neu);
+        sichernFallsFaellig();
+    }
+
+    // 距离上次写盘超过间隔时写盘（只有一个线程执行）
+    private void sichernFallsFaellig() {
+        long letzte = letzteSicherung.get();
+        long jetzt = System.nanoTime();
+        if (jetzt - letzte >= intervall && letzteSicherung.compareAndSet(letzte, jetzt)) {
+            sichern();
+        }
+    }
+
+    // 先写槽位，再写状态
+    private void sichern() {
+        for (MappedByteBuffer region : regionen) {
+            region.force();
+        }
+        karte.force();
+    }
+
+    @Override
+    public void close() {
+        sichern();
+        try {
+            kanal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tools;
+
+/**
+ * 电介质（玻璃、水）：按菲涅尔（Schlick）概率选择镜面反射或折射。
+ */
+public class DielectricMaterial extends Material {
+    private final double ior;   // 折射率
+    private final Color tint;   // 透射颜色
+
+    public DielectricMaterial(double ior) {
+        this(ior, Color.white);
+    }
+
+    public DielectricMaterial(double ior, Color tint) {
+        this.ior = ior;
+        this.tint = tint;
+    }
+
+    public double ior() {
+        return ior;
+    }
+
+    @Override
+    Color baseColor(Hit hit) {
+        return tint;
+    }
+
+    @Override
+    public boolean isSpecular() {
+        return true;
+    }
+
+    @Override
+    public Color evaluate(Hit hit, Vec3 wo, Vec3 wi) {
+        return Color.black; // 只有delta方向
+    }
+
+    @Override
+    public double pdf(Hit hit, Vec3 wo, Vec3 wi) {
+        return 0;
+    }
+
+    @Override
+    public Sample sample(Hit hit, Vec3 wo, Random random) {
+        Vec3 n = hit.normal().normalize();
+        boolean eintretend = n.dot(wo) > 0; // 从外部射入
+        Vec3 nn = eintretend ? n : n.negate();
+        double eta = eintretend ? 1 / ior : ior;
+        double cosI = nn.dot(wo);
+
+        Vec3 reflektiert = Functions.reflect(nn, wo.negate()).normalize();
+        Vec3 gebrochen = refract(wo, nn, cosI, eta);
+        if (gebrochen == null) {
+            // 全反射
+            return new Sample(reflektiert, Color.white, 1, true);
+        }
+        double f0 = (1 - ior) / (1 + ior);
+        double fresnel = schlick(eintretend ? cosI : -gebrochen.dot(nn), f0 * f0);
+        if (random.nextDouble() < fresnel) {
+            return new Sample(reflektiert, Color.white, fresnel, true);
+        }
+        return new Sample(gebrochen, tint, 1 - fresnel, true);
+    }
+
+    // 斯涅尔定律；全反射时返回null
+    static Vec3 refract(Vec3 wo, Vec3 nn, double cosI, double eta) {
+        double k = 1 - eta * eta * (1 - cosI * cosI);
+        if (k < 0) return null;
+        return wo.negate().multiply(eta).add(nn.multiply(eta * cosI - Math.sqrt(k))).normalize();
+    }
+}
@@ -10,7 +10,13 @@ public class Ebene implements Shape {
     private ImageTexture texture; // 新增：纹理属性（优先级高于纯色）
     private Mat44 transform; // 变换矩阵
     private Mat44 invTransform; // 逆变换矩阵
+    private Transform trafo = Transform.identity; // 求交用的变换（分类过，逆矩阵算好）
+    private boolean identisch = true; // 单位变换：求交时跳过射线和交点的变换
+
+    private static final Vec3 OBEN = new Vec3(0, 1, 0);
+    private static final Vec3 UNTEN = new Vec3(0, -1, 0);
     private double textureScale = 0.1; // 新增：纹理缩放因子（控制平铺密度）
+    private Material material; // 物理材质（可选，PathTracer使用）
 
     // 无限平面
     public Ebene(Color color) {
@@ -54,6 +60,8 @@ public class Ebene implements Shape {
     public void setTransform(Mat44 transform) {
         this.transform = transform;
         this.invTransform = transform.invert();
+        this.trafo = Transform.of(transform);
+        this.identisch = trafo.isIdentity();
     }
     public Mat44 getTransform() {
         return transform;
@@ -65,7 +73,8 @@ public class Ebene implements Shape {
     // Y=0平面求交
     @Override
     public Hit intersect(Ray ray) {
-        Ray transformedRay = ray.transform(invTransform);
+        // 单位变换时直接用世界射线，不创建新的射线
+        Ray transformedRay = identisch ? ray : trafo.toLocal(ray); // 方向不归一化，t和世界坐标系相同
 
         Vec3 rayDir = transformedRay.direction();
         Vec3 rayOrig = transformedRay.origin();
@@ -77,7 +86,9 @@ public class Ebene implements Shape {
         
         if (t < transformedRay.tmin() || t > transformedRay.tmax()) { return null; }
 
-        Vec3 hitPos = transformedRay.at(t);
+        // 交点的x和z（y为0）；先只用分量检查边界，落在边界外的射线不创建任何对象
+        double x = rayOrig.x() + t * rayDir.x();
+        double z = rayOrig.z() + t * rayDir.z();
 
         // 6.检查交点是否在边界内
         boolean inBounds;
@@ -86,13 +97,13 @@ public class Ebene implements Shape {
                 inBounds = true;
                 break;
             case KREISRUND:
-                double distSq = hitPos.x() * hitPos.x() + hitPos.z() * hitPos.z();
+                double distSq = x * x + z * z;
                 inBounds = distSq <= parameter * parameter + 1e-9;
                 break;
             case QUADRATISCH:
                 double halb = parameter / 2.0;
-                inBounds = Math.abs(hitPos.x()) <= halb + 1e-9 && 
-                          Math.abs(hitPos.z()) <= halb + 1e-9;
+                inBounds = Math.abs(x) <= halb + 1e-9 && 
+                          Math.abs(z) <= halb + 1e-9;
                 break;
             default:
                 inBounds = false;
@@ -100,22 +111,13 @@ public class Ebene implements Shape {
         
         if (!inBounds) { return null; }
 
-        // 5. 计算局部坐标的法向量（局部坐标系中向上）
-        Vec3 localNormal = new Vec3(0, 1, 0);
-        
-         // 射线起点的Y坐标 < 0 → 观察者在平面下方，法向量朝下（-Y）
-        if (rayOrig.y() < 0) {
-            localNormal = localNormal.multiply(-1);
-        }
-
-        // 将交点和法向量转换回世界坐标
-        Vec3 worldHitPos = transform.multiplyPoint(hitPos); // 点变换
-        Vec3 worldNormal = transform.multiplyDirection(localNormal).normalize(); // 法向量变换（仅旋转缩放）
+        // 5. 局部坐标的法向量（局部坐标系中向上）
+        //    射线起点的Y坐标 < 0 → 观察者在平面下方，法向量朝下（-Y）
+        Vec3 localNormal = rayOrig.y() < 0 ? UNTEN : OBEN;
+        Hit hit = new Hit(t, new Vec3(x, 0, z), localNormal, this, null);
 
-
-        // 创建Hit对象（t值使用原始射线的参数，无需转换）
-        return new Hit(t, worldHitPos, worldNormal, this, null);
-       
+        // 将交点和法向量转换回世界坐标（t值和原始射线相同，无需转换；单位变换时原样返回）
+        return identisch ? hit : trafo.toWorld(hit);
     }
 
 
@@ -133,7 +135,7 @@ public class Ebene implements Shape {
         // 1. 有纹理 → 采样纹理（无限平铺）
         if (texture != null) {
             // 将世界坐标的交点转换为局部坐标（消除平移/旋转影响）
-            Vec3 localHitPos = invTransform.multiplyPoint(hitPoint);
+            Vec3 localHitPos = trafo.pointToLocal(hitPoint);
             
             // 计算UV坐标：X/Z * 缩放因子，无限平铺（取小数部分）
             double u = localHitPos.x() * textureScale;
@@ -149,6 +151,29 @@ public class Ebene implements Shape {
         return color;
     }
 
+    // 局部坐标系中平面位于 y=0，无限平面没有有限的包围盒
+    @Override
+    public BoundingBox bounds() {
+        double halb = switch (typ) {
+            case KREISRUND -> parameter;
+            case QUADRATISCH -> parameter / 2.0;
+            default -> Double.POSITIVE_INFINITY;
+        };
+        if (Double.isInfinite(halb)) {
+            return BoundingBox.everything;
+        }
+        return new BoundingBox(new Vec3(-halb, 0, -halb), new Vec3(halb, 0, halb)).transform(transform);
+    }
+
+    public void setMaterial(Material material) {
+        this.material = material;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
     // 设置纹理缩放因子（可选）
     public void setTextureScale(double scale) {
         this.textureScale = scale;
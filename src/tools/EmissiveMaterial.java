@@ -0,0 +1,37 @@
+package tools;
+
+/**
+ * 自发光材质：只发光，不散射（吸收所有入射光）。
+ */
+public class EmissiveMaterial extends Material {
+    private final Color strahlung;
+
+    public EmissiveMaterial(Color strahlung) {
+        this.strahlung = strahlung;
+    }
+
+    @Override
+    Color baseColor(Hit hit) {
+        return strahlung;
+    }
+
+    @Override
+    public Color emission(Hit hit) {
+        return strahlung;
+    }
+
+    @Override
+    public Color evaluate(Hit hit, Vec3 wo, Vec3 wi) {
+        return Color.black;
+    }
+
+    @Override
+    public double pdf(Hit hit, Vec3 wo, Vec3 wi) {
+        return 0;
+    }
+
+    @Override
+    public Sample sample(Hit hit, Vec3 wo, Random random) {
+        return null;
+    }
+}
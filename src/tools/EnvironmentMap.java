@@ -0,0 +1,84 @@
+package tools;
+
+import java.util.stream.IntStream;
+
+/**
+ * 预计算的等距柱状（equirectangular）环境贴图。
+ *
+ * <p>
+ * 构造时把任意（可能很昂贵的）程序化天空烘焙到一张浮点纹理里，
+ * 之后每次查询只需一次纹素读取，与原天空的计算代价无关。
+ */
+public class EnvironmentMap implements EnvironmentSampler, Sampler {
+    private final int width;
+    private final int height;
+    private final float[] texels; // 每个纹素3个分量（RGB）
+
+    private EnvironmentMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.texels = new float[width * height * 3];
+    }
+
+    /**
+     * 把一个环境采样器烘焙成环境贴图（按行并行计算）。
+     *
+     * @param source 原始天空（例如 StarrySky）
+     * @param width  贴图宽度（经度方向）
+     * @param height 贴图高度（纬度方向）
+     * @return 烘焙好的环境贴图
+     */
+    public static EnvironmentMap bake(EnvironmentSampler source, int width, int height) {
+        EnvironmentMap map = new EnvironmentMap(width, height);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                // 取纹素中心对应的方向
+                double u = (x + 0.5) / width;
+                double v = (y + 0.5) / height;
+                Color c = source.sample(direction(u, v));
+                int i = (y * width + x) * 3;
+                map.texels[i] = (float) c.r();
+                map.texels[i + 1] = (float) c.g();
+                map.texels[i + 2] = (float) c.b();
+            }
+        });
+        return map;
+    }
+
+    // 方向 → 单次纹素读取
+    @Override
+    public Color sample(Vec3 direction) {
+        double u = 0.5 + Math.atan2(direction.z(), direction.x()) / (2 * Math.PI);
+        double v = Math.acos(Math.max(-1, Math.min(1, direction.y()))) / Math.PI;
+        return texel(u, v);
+    }
+
+    // 实现Sampler接口：直接按UV读取（u=经度，v=纬度，v=0为正上方）
+    @Override
+    public Color sample(Vec2 uv) {
+        return texel(uv.u() - Math.floor(uv.u()), uv.v());
+    }
+
+    private Color texel(double u, double v) {
+        int x = Math.max(0, Math.min((int) (u * width), width - 1));
+        int y = Math.max(0, Math.min((int) (v * height), height - 1));
+        int i = (y * width + x) * 3;
+        return new Color(texels[i], texels[i + 1], texels[i + 2], 1.0);
+    }
+
+    // UV → 方向（sample(Vec3)的逆映射）
+    private static Vec3 direction(double u, double v) {
+        double phi = (u - 0.5) * 2 * Math.PI;
+        double theta = v * Math.PI;
+        double s = Math.sin(theta);
+        return new Vec3(s * Math.cos(phi), Math.cos(theta), s * Math.sin(phi));
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+}
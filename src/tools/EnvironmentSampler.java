@@ -0,0 +1,19 @@
+package tools;
+
+/**
+ * 背景/环境采样器：根据射线方向返回环境颜色。
+ * SimpleRayTracer 对未击中任何物体的射线调用它。
+ */
+public interface EnvironmentSampler {
+
+    /**
+     * @param direction 射线方向（单位向量）
+     * @return 该方向上的环境颜色
+     */
+    Color sample(Vec3 direction);
+
+    // 纯色背景（和以前的backgroundColor行为一致）
+    static EnvironmentSampler constant(Color color) {
+        return direction -> color;
+    }
+}
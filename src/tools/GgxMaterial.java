@@ -0,0 +1,86 @@
+package tools;
+
+/**
+ * GGX（Trowbridge-Reitz）微表面反射材质（金属/导体），
+ * Smith遮蔽项 + Schlick菲涅尔，按法线分布D采样半程向量。
+ */
+public class GgxMaterial extends Material {
+    private final Color f0;          // 正入射时的反射率（金属颜色）
+    private final double roughness;  // 感知粗糙度，alpha = roughness²
+
+    public GgxMaterial(Color f0, double roughness) {
+        this.f0 = f0;
+        this.roughness = Math.max(0.02, Math.min(1, roughness)); // 太光滑时数值不稳定
+    }
+
+    @Override
+    Color baseColor(Hit hit) {
+        return f0;
+    }
+
+    @Override
+    Color specular(Hit hit) {
+        return f0;
+    }
+
+    @Override
+    double roughtness(Hit hit) {
+        return roughness;
+    }
+
+    @Override
+    public Color evaluate(Hit hit, Vec3 wo, Vec3 wi) {
+        Vec3 n = normale(hit, wo);
+        double cosO = n.dot(wo);
+        double cosI = n.dot(wi);
+        if (cosO <= 0 || cosI <= 0) return Color.black;
+        Vec3 h = wo.add(wi).normalize();
+        double alpha = roughness * roughness;
+        double d = verteilung(n.dot(h), alpha);
+        double g = smithG1(cosO, alpha) * smithG1(cosI, alpha);
+        Color f = schlick(Math.max(0, wo.dot(h)), f0);
+        // f * cos = D G F / (4 cosO cosI) * cosI
+        return f.multiply(d * g / (4 * cosO));
+    }
+
+    @Override
+    public double pdf(Hit hit, Vec3 wo, Vec3 wi) {
+        Vec3 n = normale(hit, wo);
+        if (n.dot(wi) <= 0) return 0;
+        Vec3 h = wo.add(wi).normalize();
+        double cosH = n.dot(h);
+        double alpha = roughness * roughness;
+        return verteilung(cosH, alpha) * cosH / (4 * Math.abs(wo.dot(h)));
+    }
+
+    @Override
+    public Sample sample(Hit hit, Vec3 wo, Random random) {
+        Vec3 n = normale(hit, wo);
+        double alpha = roughness * roughness;
+        double u1 = random.nextDouble();
+        double u2 = random.nextDouble();
+        // 按D(h)cos(h)采样半程向量
+        double tan2 = alpha * alpha * u1 / (1 - u1);
+        double cosH = 1 / Math.sqrt(1 + tan2);
+        double sinH = Math.sqrt(Math.max(0, 1 - cosH * cosH));
+        double phi = 2 * Math.PI * u2;
+        Vec3 h = zuWelt(n, sinH * Math.cos(phi), sinH * Math.sin(phi), cosH);
+        Vec3 wi = Functions.reflect(h, wo.negate());
+        if (n.dot(wi) <= 0) return null;
+        double pdf = pdf(hit, wo, wi);
+        if (pdf <= 0) return null;
+        return new Sample(wi, evaluate(hit, wo, wi).multiply(1 / pdf), pdf, false);
+    }
+
+    private static double verteilung(double cosH, double alpha) {
+        if (cosH <= 0) return 0;
+        double a2 = alpha * alpha;
+        double k = cosH * cosH * (a2 - 1) + 1;
+        return a2 / (Math.PI * k * k);
+    }
+
+    private static double smithG1(double cos, double alpha) {
+        double tan2 = (1 - cos * cos) / (cos * cos);
+        return 2 / (1 + Math.sqrt(1 + alpha * alpha * tan2));
+    }
+}
@@ -1,17 +1,62 @@
 package tools;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Group implements Shape { 
     private List<Shape> children = new ArrayList<>();
     private Mat44 transform = new Mat44(); // 组合变换矩阵（默认单位矩阵）
     private Mat44 invTransform; // 逆矩阵（用于射线变换）
+    private Mat44 endTransform; // 快门结束时（time = 1）的变换，静止的组为null
+    // 求交用的变换（setTransform 时分类并算好逆矩阵）
+    private Transform trafo = Transform.identity;
+    private Transform endTrafo;
+    private boolean identisch = true; // 单位变换（纯组织用的组）：求交时不做任何变换
 
     // 新增：设置变换矩阵，并预计算逆矩阵
     public void setTransform(Mat44 transform) {
         this.transform = transform;
         this.invTransform = transform.invert(); // 依赖之前补充的invert()方法
+        this.endTransform = null;
+        this.trafo = Transform.of(transform);
+        this.endTrafo = null;
+        this.identisch = trafo.isIdentity();
+    }
+
+    /**
+     * 运动的组：快门开始（time = 0）和结束（time = 1）时的变换，
+     * 中间按射线的时间逐元素线性插值（平移是精确的，旋转在一帧之内近似）
+     */
+    public void setTransform(Mat44 start, Mat44 end) {
+        setTransform(start);
+        if (!start.equals(end)) {
+            this.endTransform = end;
+            this.endTrafo = Transform.of(end);
+            this.identisch = false;
+        }
+    }
+
+    public boolean isMoving() {
+        return endTransform != null;
+    }
+
+    // time 时刻的变换
+    public Mat44 getTransform(double time) {
+        return endTransform == null ? transform : Mat44.interpolate(transform, endTransform, time);
+    }
+
+    public Mat44 getEndTransform() {
+        return endTransform == null ? transform : endTransform;
+    }
+
+    // 把局部坐标系中的包围盒变换到父坐标系；运动的组取整个快门时间内的并集
+    public BoundingBox transformBounds(BoundingBox lokal) {
+        if (lokal.equals(BoundingBox.everything) || lokal.equals(BoundingBox.empty)) {
+            return lokal;
+        }
+        BoundingBox b = lokal.transform(transform);
+        return endTransform == null ? b : b.extend(lokal.transform(endTransform));
     }
 
     // 获取变换矩阵
@@ -35,31 +80,58 @@ public class Group implements Shape {
         // 1. 空值保护：射线为null直接返回
         if (ray == null) return null;
         
-        // 2. 获取逆矩阵（确保非null）
-        Mat44 invMat = getInvTransform();
-        
-        // 3. 将世界坐标系射线转换为Group局部坐标系
-        Ray localRay = ray.transform(invMat);
+        // 2. 单位变换：直接用世界射线求交，交点也不需要变换回去
+        if (identisch) {
+            return naechster(ray, ray);
+        }
+
+        // 3. 获取变换（运动的组先求射线时刻的变换），
+        //    将世界坐标系射线转换为Group局部坐标系（方向不归一化，t和世界坐标系相同）
+        Transform aktuell = endTrafo == null ? trafo : Transform.interpolate(trafo, endTrafo, ray.time());
+        Hit closestHit = naechster(aktuell.toLocal(ray), ray);
+
+        // 4. 只把最近的交点转换回世界坐标系
+        return closestHit == null ? null : aktuell.toWorld(closestHit);
+    }
 
-        // 4. 遍历所有子形状求交
+    // 所有子形状中最近的交点（变换不改变t，只需要比较局部交点）
+    private Hit naechster(Ray localRay, Ray ray) {
         Hit closestHit = null;
         double minT = Double.POSITIVE_INFINITY;
         for (Shape child : children) {
             if (child == null) continue; // 子形状空值保护
             Hit hit = child.intersect(localRay);
             if (hit != null) {
-                // 5. 将局部坐标系交点转换回世界坐标系
-                Hit worldHit = hit.transform(this.transform);
-                double t = worldHit.t();
+                double t = hit.t();
                 if (t < minT && ray.isWithinBounds(t)) {
                     minT = t;
-                    closestHit = worldHit;
+                    closestHit = hit;
                 }
             }
         }
         return closestHit;
     }
 
+    // 所有子形状包围盒的并集，变换到父坐标系
+    @Override
+    public BoundingBox bounds() {
+        BoundingBox lokal = BoundingBox.empty;
+        for (Shape child : children) {
+            if (child == null) continue;
+            BoundingBox b = child.bounds();
+            if (b.equals(BoundingBox.everything)) {
+                return BoundingBox.everything;
+            }
+            lokal = lokal.extend(b);
+        }
+        return transformBounds(lokal);
+    }
+
+    // 子形状（只读）
+    public List<Shape> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
     @Override
 public Color getColor() {
     // 遍历所有子形状，计算组合颜色
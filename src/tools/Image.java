@@ -10,5 +10,14 @@ public interface Image {
 
     public int height();
 
-    
+    // 一行的线性RGB值（每个像素3个分量），写文件时按行读取，不复制整幅图像。
+    // 默认逐个调用 getPixel；存储方式允许时可以直接复制。
+    public default void getRow(int y, double[] row) {
+        for (int x = 0; x != width(); x++) {
+            Color c = getPixel(x, y);
+            row[3 * x] = c.r();
+            row[3 * x + 1] = c.g();
+            row[3 * x + 2] = c.b();
+        }
+    }
 }
@@ -5,41 +5,76 @@ import static tools.Functions.*;
 // 必须显式导入AWT/ImageIO相关类
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.ImageIO;
 
 // 实现Sampler接口
 public class ImageTexture implements Sampler {
 
+    // 按文件名共享的纹理（纹理加载后只读，可以被多个场景和线程同时使用），
+    // 和加载时文件的修改时间、大小一起保存，文件改变后重新加载
+    private record Eintrag(long geaendert, long groesse, ImageTexture textur) {
+        boolean aktuell(File datei) {
+            return datei.lastModified() == geaendert && datei.length() == groesse;
+        }
+    }
+
+    private static final Map<String, Eintrag> geteilt = new ConcurrentHashMap<>();
+
     private BufferedImage image;
     public final int width;
     public final int height;
     private final double componentScale;
     private final int components;
 
+    /**
+     * 同一个文件只加载一次：动画的每一帧构建新场景时共享已经加载的纹理。
+     * 文件的修改时间或大小和加载时不同时重新加载（常驻的服务不会一直用旧的纹理）。
+     * 文件不存在或无法读取时抛出 UncheckedIOException，不会缓存失败的结果。
+     */
+    public static ImageTexture shared(String filename) {
+        File datei = new File(filename);
+        return geteilt.compute(filename, (name, alt) -> {
+            if (alt != null && alt.aktuell(datei)) {
+                return alt;
+            }
+            // 先取时间和大小再读取：读取期间文件又改变时，下次会再加载一次
+            long geaendert = datei.lastModified(), groesse = datei.length();
+            return new Eintrag(geaendert, groesse, new ImageTexture(name));
+        }).textur();
+    }
+
+    /**
+     * 从共享的纹理中去掉文件已经改变的，返回是否有改变的。
+     * 缓存了整个场景的调用者（例如 RenderServer）用它判断场景里的纹理是否还是最新的。
+     */
+    public static boolean sharedChanged() {
+        return geteilt.entrySet().removeIf(e -> !e.getValue().aktuell(new File(e.getKey())));
+    }
+
     /**
      * Constructs an ImageTexture from an image file.
      *
      * @param filename The path to the image file to load
-     * @throws RuntimeException if the image cannot be read or is invalid
+     * @throws UncheckedIOException if the image cannot be read or is invalid
+     *         (the caller decides: a render server rejects only that scene)
      */
     public ImageTexture(String filename) {
+        File imageFile = new File(filename);
+        if (!imageFile.exists()) {
+            throw new UncheckedIOException(new FileNotFoundException("image file does not exist: " + filename));
+        }
         try {
-            File imageFile = new File(filename);
-            if (!imageFile.exists()) {
-                System.err.println("Image file does not exist: " + filename);
-                System.exit(1);
-            }
-            image = ImageIO.read(new File(filename));
+            image = ImageIO.read(imageFile);
         } catch (IOException e) {
-            System.err.println("Cannot read image from: " + filename);
-            e.printStackTrace();
-            System.exit(1);
+            throw new UncheckedIOException("cannot read image from: " + filename, e);
         }
-
         if (image == null) {
-            System.err.println("Error reading image from: " + filename);
-            System.exit(1);
+            throw new UncheckedIOException(new IOException("unsupported image format: " + filename));
         }
 
         // 获取图片尺寸和通道数
@@ -1,22 +1,24 @@
 
 package tools;
 
-import java.awt.color.ColorSpace;
-import java.awt.image.BufferedImage;
-import java.awt.image.ComponentColorModel;
-import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import javax.imageio.ImageIO;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /*
  * A simple image writer that takes an array of pixel components and the image
  * size and writes the corresponding image in 16-bit PNG format with a linear
  * color space to the provided location.
+ *
+ * The PNG encoder streams: pixels are fetched, filtered and compressed one row
+ * at a time, so writing a poster-size image needs no full-frame buffer.
  */
 public class ImageWriter {
 
@@ -52,23 +54,37 @@ public class ImageWriter {
     // created.
     public static boolean writeHdr(String basename, double[] data, int width,
             int height) {
+        return writeHdr(basename, width, height, (y, row) -> System.arraycopy(data, width * y * 3, row, 0, width * 3));
+    }
+
+    // Same for any Image; rows are read one at a time, no full-size copy is
+    // made.
+    public static boolean writeHdr(String basename, Image image) {
+        return writeHdr(basename, image.width(), image.height(), image::getRow);
+    }
+
+    private static boolean writeHdr(String basename, int width, int height,
+            RowSource source) {
         var pfmName = "images/" + dropExtension(basename) + ".pfm";
         var exrName = "images/" + dropExtension(basename) + ".exr";
         new File(exrName).getParentFile().mkdirs();
         var file = new File(pfmName);
         try {
-            // Writes out a PFM binary file ...
+            // Writes out a PFM binary file one row at a time ...
             var order = "1.0";
-            var out = new FileOutputStream(file);
-            out.write(
-                    String.format("PF\n%d %d\n%s\n", width, height, order).getBytes());
-            float[] floatData = new float[data.length];
-            for (var i = 0; i != data.length; i++)
-                floatData[i] = (float) data[i];
-            byte bytes[] = new byte[Float.BYTES * data.length];
-            ByteBuffer.wrap(bytes).asFloatBuffer().put(floatData);
-            out.write(bytes);
-            out.close();
+            try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+                out.write(
+                        String.format("PF\n%d %d\n%s\n", width, height, order).getBytes());
+                double[] row = new double[width * 3];
+                ByteBuffer bytes = ByteBuffer.allocate(Float.BYTES * row.length);
+                for (int y = 0; y != height; y++) {
+                    source.row(y, row);
+                    bytes.clear();
+                    for (double v : row)
+                        bytes.putFloat((float) v);
+                    out.write(bytes.array());
+                }
+            }
 
             // ... and uses convert to produce an EXR from it.
             var proc = new ProcessBuilder("convert", pfmName, "-flip", exrName).start();
@@ -93,26 +109,34 @@ public class ImageWriter {
         var filename = "images/" + dropExtension(basename) + ".png";
         new File(filename).getParentFile().mkdirs();
         try {
-            // setup an sRGB image with 16-bit components of the right size.
-            ComponentColorModel ccm = new ComponentColorModel(
-                    ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
-                    ComponentColorModel.OPAQUE, DataBuffer.TYPE_USHORT);
-
-            WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_USHORT,
-                    width, height, 3, null);
-            BufferedImage image = new BufferedImage(ccm, raster, false, null);
-
-            for (int y = 0; y != height; y++) {
-                for (int x = 0; x != width; x++) {
-                    int i = (width * y + x) * 3;
-                    int[] rgb = { (int) (clamp(gamma(data[i + 0])) * 65535.0),
-                            (int) (clamp(gamma(data[i + 1])) * 65535.0),
-                            (int) (clamp(gamma(data[i + 2])) * 65535.0) };
-                    raster.setPixel(x, y, rgb);
-                }
+            File file = new File(filename);
+            try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+                writePng(out, data, width, height);
             }
+            System.out.format("write: %s\n", file);
+        } catch (IOException error) {
+            System.out.println(String.format(
+                    "Something went wrong writing PNG image: %s:\n %s", filename, error));
+        }
+    }
+
+    // Encodes the provided image data as 16-bit sRGB PNG into a stream (e.g. an
+    // HTTP response). The stream is not closed.
+    public static void writePng(OutputStream out, double[] data, int width,
+            int height) throws IOException {
+        writePng(out, width, height, (y, row) -> System.arraycopy(data, width * y * 3, row, 0, width * 3));
+    }
+
+    // Writes any Image (double, float, half or RGBE storage) as 16-bit sRGB
+    // PNG. Pixels are read one row at a time, no full-size copy is made.
+    public static void writePng(String basename, Image image) {
+        var filename = "images/" + dropExtension(basename) + ".png";
+        new File(filename).getParentFile().mkdirs();
+        try {
             File file = new File(filename);
-            ImageIO.write(image, "png", file);
+            try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+                writePng(out, image);
+            }
             System.out.format("write: %s\n", file);
         } catch (IOException error) {
             System.out.println(String.format(
@@ -120,6 +144,98 @@ public class ImageWriter {
         }
     }
 
+    public static void writePng(OutputStream out, Image image) throws IOException {
+        writePng(out, image.width(), image.height(), image::getRow);
+    }
+
+    // Fills one row (3 components per pixel) of linear RGB data.
+    private interface RowSource {
+        void row(int y, double[] row);
+    }
+
+    // Encodes the PNG directly (IHDR, IDAT, IEND) so that only one row is held
+    // in memory, whatever the image size. Rows are not filtered (filter type
+    // 0), like the ImageIO encoder does for 16-bit images.
+    private static void writePng(OutputStream out, int width, int height,
+            RowSource source) throws IOException {
+        out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 16).put((byte) 2); // 16-bit RGB
+        header.put((byte) 0).put((byte) 0).put((byte) 0); // deflate, adaptive filter, no interlace
+        writeChunk(out, "IHDR", header.array(), 13);
+
+        double[] row = new double[width * 3];
+        byte[] line = new byte[1 + width * 6]; // filter byte, then big-endian samples
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        var idat = new DeflaterOutputStream(new ChunkStream(out), deflater, 65536);
+        for (int y = 0; y != height; y++) {
+            source.row(y, row);
+            for (int i = 0; i != row.length; i++) {
+                int v = (int) (clamp(gamma(row[i])) * 65535.0);
+                line[1 + 2 * i] = (byte) (v >>> 8);
+                line[2 + 2 * i] = (byte) v;
+            }
+            idat.write(line);
+        }
+        idat.finish();
+        idat.flush();
+        deflater.end();
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data,
+            int length) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.write(ByteBuffer.allocate(4).putInt(length).array());
+        out.write(name);
+        out.write(data, 0, length);
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+    // Collects the compressed stream and writes it as 32 KiB IDAT chunks. The
+    // underlying stream is never closed.
+    private static final class ChunkStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[32768];
+        private int size;
+
+        ChunkStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length)
+                flush();
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length)
+                    flush();
+                int n = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk(out, "IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+
     private static double gamma(double v) {
         return (double) Math.pow(v, 1 / 2.2);
     }
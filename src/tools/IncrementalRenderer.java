@@ -0,0 +1,321 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * 场景改变后只重新渲染受影响的像素。
+ *
+ * <p>
+ * 完整渲染时为每个像素记录一份"协议"：这个像素所有射线（主射线、反射、折射、透明）
+ * 的线段、所有着色点，以及击中或遮挡过的形状。之后移动了某些形状时，
+ * 只有满足下面任一条件的像素需要重新计算：
+ * <ul>
+ * <li>击中过或被遮挡过改变的形状</li>
+ * <li>某条射线线段穿过改变的形状在改变前或改变后的包围盒</li>
+ * <li>某个着色点到某个光源的阴影线段穿过这些包围盒（面光源按它的外接球放大包围盒）</li>
+ * </ul>
+ * 其他像素的所有射线和阴影射线都不可能碰到改变的形状，颜色不变。
+ * 光源改变（移动、增减）会影响每个着色点，所以所有击中物体的像素都重新计算。
+ *
+ * <p>
+ * 用法：render 渲染完整的一帧；改变场景之前调用 beginChange（或 beginLightChange），
+ * 改变之后调用 rerender，传入同一张图像。随机采样（面光源、光源树）的随机流由像素和交点确定，
+ * 所以 rerender 的结果和完整渲染相同。
+ *
+ * <p>
+ * 改变的形状可以在 Group 和 Bvh 里（rerender 先 refit 路径上的 Bvh），也可以是 Instance 本身
+ * （Instance.setTransform）。Instance 原型里的形状被所有实例共享，不能单独改变。
+ */
+public class IncrementalRenderer {
+
+    // 一个像素的记录
+    record Pixel(double[] strahlen, double[] punkte, Shape[] objekte) {}
+
+    /**
+     * 追踪一个像素时收集的数据（每个线程一个，SimpleRayTracer 在追踪时填写）
+     */
+    static final class Protokoll {
+        private double[] strahlen = new double[7 * 4]; // 起点、方向、终点的t（未击中时为无穷大）
+        private int anzahlStrahlen;
+        private double[] punkte = new double[3 * 4];   // 着色点
+        private int anzahlPunkte;
+        private final List<Shape> objekte = new ArrayList<>(); // 击中或遮挡过的形状（叶子）
+
+        void strahl(Ray ray, double tEnde) {
+            if (7 * (anzahlStrahlen + 1) > strahlen.length) {
+                strahlen = Arrays.copyOf(strahlen, strahlen.length * 2);
+            }
+            int i = 7 * anzahlStrahlen++;
+            Vec3 o = ray.origin();
+            Vec3 d = ray.direction();
+            strahlen[i] = o.x();
+            strahlen[i + 1] = o.y();
+            strahlen[i + 2] = o.z();
+            strahlen[i + 3] = d.x();
+            strahlen[i + 4] = d.y();
+            strahlen[i + 5] = d.z();
+            strahlen[i + 6] = tEnde;
+        }
+
+        void punkt(Vec3 p) {
+            if (3 * (anzahlPunkte + 1) > punkte.length) {
+                punkte = Arrays.copyOf(punkte, punkte.length * 2);
+            }
+            int i = 3 * anzahlPunkte++;
+            punkte[i] = p.x();
+            punkte[i + 1] = p.y();
+            punkte[i + 2] = p.z();
+        }
+
+        void objekt(Shape shape) {
+            // 每个像素只有很少几个形状，线性查找比哈希表快
+            for (Shape s : objekte) {
+                if (s == shape) return;
+            }
+            objekte.add(shape);
+        }
+
+        void clear() {
+            anzahlStrahlen = 0;
+            anzahlPunkte = 0;
+            objekte.clear();
+        }
+
+        Pixel abschliessen() {
+            return new Pixel(Arrays.copyOf(strahlen, 7 * anzahlStrahlen),
+                             Arrays.copyOf(punkte, 3 * anzahlPunkte),
+                             objekte.toArray(new Shape[0]));
+        }
+    }
+
+    // 一个被改变的形状：从场景顶层到它的路径上的 Group 和 Bvh，以及改变前的世界包围盒
+    private record Aenderung(Shape objekt, List<Shape> pfad, BoundingBox vorher) {}
+
+    private final SimpleRayTracer tracer;
+    private final List<Shape> scene;
+    private final List<Lichtquelle> lichtquellen;
+
+    private Pixel[] pixel;
+    private int width;
+    private int height;
+
+    private final List<Aenderung> aenderungen = new ArrayList<>();
+    private final Set<Shape> geaendert = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean lichtGeaendert = false;
+
+    /**
+     * @param scene        tracer 使用的场景列表（用来查找形状在场景层次中的位置）
+     * @param lichtquellen tracer 使用的光源列表
+     */
+    public IncrementalRenderer(SimpleRayTracer tracer, List<Shape> scene, List<Lichtquelle> lichtquellen) {
+        this.tracer = tracer;
+        this.scene = scene;
+        this.lichtquellen = lichtquellen;
+    }
+
+    /**
+     * 完整渲染一帧，同时记录每个像素的协议（按行并行）
+     */
+    public void render(Image image) {
+        width = image.width();
+        height = image.height();
+        pixel = new Pixel[width * height];
+        aenderungen.clear();
+        geaendert.clear();
+        lichtGeaendert = false;
+
+        IntStream.range(0, height).parallel().forEach(y -> zeile(image, y, null));
+    }
+
+    /**
+     * 在改变这些形状（移动、修改变换、加入或移出场景）之前调用，记录它们原来的位置。
+     * 形状可以是场景中 Group 或 Bvh 里任何一层的形状（包括 Instance），
+     * 但不能在 Instance 的原型里。
+     *
+     * @throws IllegalArgumentException 形状在 Instance 的原型里
+     */
+    public void beginChange(Shape... objekte) {
+        for (Shape objekt : objekte) {
+            List<Shape> pfad = new ArrayList<>();
+            if (!finde(scene, objekt, pfad)) {
+                pfad.clear(); // 还不在场景中（新加入的顶层形状）
+            }
+            for (Shape s : pfad) {
+                if (s instanceof Instance) {
+                    throw new IllegalArgumentException("shape is part of an instance prototype shared by all "
+                                                       + "instances; change the instance instead");
+                }
+            }
+            aenderungen.add(new Aenderung(objekt, pfad, weltBounds(objekt, pfad)));
+            blaetter(objekt, geaendert);
+        }
+    }
+
+    /**
+     * 在改变光源之前调用：所有击中物体的像素都会重新计算
+     */
+    public void beginLightChange() {
+        lichtGeaendert = true;
+    }
+
+    /**
+     * 只重新计算受 beginChange 之后的改变影响的像素，其他像素保留 image 中上一帧的颜色。
+     *
+     * @return 重新计算的像素数
+     */
+    public int rerender(Image image) {
+        if (pixel == null || image.width() != width || image.height() != height) {
+            render(image);
+            return width * height;
+        }
+
+        // 路径上的 Bvh 从里到外重新计算包围盒，否则移动后的形状可能在节点的包围盒外面
+        for (Aenderung a : aenderungen) {
+            for (int i = a.pfad().size() - 1; i >= 0; i--) {
+                if (a.pfad().get(i) instanceof Bvh bvh) {
+                    bvh.refit();
+                }
+            }
+        }
+
+        // 每个改变的形状在改变前和改变后的包围盒（稍微放大，容纳数值误差和阴影射线的偏移）
+        List<BoundingBox> boxen = new ArrayList<>();
+        for (Aenderung a : aenderungen) {
+            boxen.add(erweitert(a.vorher(), 1e-3));
+            boxen.add(erweitert(weltBounds(a.objekt(), a.pfad()), 1e-3));
+        }
+
+        AtomicInteger anzahl = new AtomicInteger();
+        IntStream.range(0, height).parallel().forEach(y -> {
+            boolean[] neu = new boolean[width];
+            for (int x = 0; x < width; x++) {
+                neu[x] = betroffen(pixel[y * width + x], boxen);
+            }
+            anzahl.addAndGet(zeile(image, y, neu));
+        });
+
+        aenderungen.clear();
+        geaendert.clear();
+        lichtGeaendert = false;
+        return anzahl.get();
+    }
+
+    // 渲染一行中需要计算的像素（auswahl 为 null 时整行），返回计算的像素数
+    private int zeile(Image image, int y, boolean[] auswahl) {
+        Protokoll protokoll = new Protokoll();
+        tracer.aufzeichnen(protokoll);
+        int anzahl = 0;
+        try {
+            for (int x = 0; x < width; x++) {
+                if (auswahl != null && !auswahl[x]) continue;
+                protokoll.clear();
+                Color c = tracer.getColor(x, y);
+                pixel[y * width + x] = protokoll.abschliessen();
+                image.setPixel(x, y, c);
+                anzahl++;
+            }
+        } finally {
+            tracer.aufzeichnen(null);
+        }
+        return anzahl;
+    }
+
+    private boolean betroffen(Pixel p, List<BoundingBox> boxen) {
+        for (Shape s : p.objekte()) {
+            if (geaendert.contains(s)) return true;
+        }
+        if (lichtGeaendert && p.punkte().length > 0) {
+            return true;
+        }
+
+        double[] s = p.strahlen();
+        double[] q = p.punkte();
+        for (BoundingBox box : boxen) {
+            // 射线线段
+            for (int i = 0; i < s.length; i += 7) {
+                Vec3 o = new Vec3(s[i], s[i + 1], s[i + 2]);
+                Vec3 d = new Vec3(s[i + 3], s[i + 4], s[i + 5]);
+                if (box.intersect(o, d, 0, s[i + 6])) return true;
+            }
+            // 阴影线段
+            for (int i = 0; i < q.length; i += 3) {
+                Vec3 punkt = new Vec3(q[i], q[i + 1], q[i + 2]);
+                for (Lichtquelle licht : lichtquellen) {
+                    if (licht != null && schattenDurch(punkt, licht, box)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 着色点到光源的阴影线段是否可能穿过包围盒
+    private static boolean schattenDurch(Vec3 punkt, Lichtquelle licht, BoundingBox box) {
+        if (!licht.isPunktlicht()) {
+            // 方向光：朝光源方向的无限射线
+            return box.intersect(punkt, licht.richtung(punkt).normalize(), 0, Double.POSITIVE_INFINITY);
+        }
+        Vec3 position = licht.getPosition();
+        if (position == null) return false;
+        Vec3 zumLicht = position.subtract(punkt);
+        double laenge = zumLicht.length();
+        if (laenge < 1e-12) return false;
+        // 面光源：到光源表面任意一点的线段离到中心的线段不超过光源的外接球半径
+        BoundingBox b = erweitert(box, licht.getAusdehnung());
+        return b.intersect(punkt, zumLicht.multiply(1 / laenge), 0, laenge);
+    }
+
+    private static BoundingBox erweitert(BoundingBox box, double d) {
+        if (box.equals(BoundingBox.everything) || box.equals(BoundingBox.empty) || d <= 0) {
+            return box;
+        }
+        Vec3 rand = new Vec3(d, d, d);
+        return new BoundingBox(box.min().subtract(rand), box.max().add(rand));
+    }
+
+    // 形状在世界坐标系中的包围盒：依次用路径上各个 Group 的变换（从内到外，Bvh 没有变换）
+    private static BoundingBox weltBounds(Shape objekt, List<Shape> pfad) {
+        BoundingBox b = objekt.bounds();
+        for (int i = pfad.size() - 1; i >= 0; i--) {
+            if (pfad.get(i) instanceof Group g) {
+                b = g.transformBounds(b);
+            }
+        }
+        return b;
+    }
+
+    // 在形状列表中查找 objekt，pfad 收集从顶层到它之间的 Group、Bvh 和 Instance
+    private static boolean finde(List<Shape> shapes, Shape objekt, List<Shape> pfad) {
+        for (Shape s : shapes) {
+            if (s == objekt) return true;
+            List<Shape> kinder = s instanceof Group g ? g.getChildren()
+                               : s instanceof Bvh bvh ? bvh.getShapes()
+                               : s instanceof Instance inst ? List.of(inst.getPrototyp())
+                               : null;
+            if (kinder != null) {
+                pfad.add(s);
+                if (finde(kinder, objekt, pfad)) return true;
+                pfad.remove(pfad.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    // 形状下面所有的叶子（Hit 中记录的是叶子形状）。Instance 原型的叶子被其他实例共享，
+    // 不加进去：击中或被实例遮挡的射线一定穿过实例的包围盒，由包围盒测试找到
+    private static void blaetter(Shape objekt, Set<Shape> ziel) {
+        ziel.add(objekt);
+        List<Shape> kinder = objekt instanceof Group g ? g.getChildren()
+                           : objekt instanceof Bvh bvh ? bvh.getShapes()
+                           : List.of();
+        for (Shape kind : kinder) {
+            if (kind != null) blaetter(kind, ziel);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package tools;
+
+/**
+ * 共享几何体的一个实例：一个预先构建好的原型（通常是自己的 Bvh）加上一个变换。
+ *
+ * <p>
+ * 原型只构建一次，所有实例引用同一个对象，每个实例只多一个变换和一个包围盒，
+ * 内存和构建时间与原型的大小无关。求交时射线变换到原型的坐标系，
+ * 交点再变换回来（和 Group 一样，局部射线的方向不归一化，t不变）。
+ * 交点中的形状是原型的叶子，所以颜色、纹理和材质都来自原型。
+ *
+ * <p>
+ * 实例可以运动（两个关键帧的变换），包围盒取两个关键帧的并集，和 Group.transformBounds 一样。
+ * setTransform 移动实例以后，包含它的 Bvh 需要 refit（IncrementalRenderer 会自动调用）。
+ */
+public class Instance implements Shape {
+    private final Shape prototyp;
+    private Transform trafo;
+    private Transform endTrafo; // 静止的实例为null
+    private BoundingBox bounds;
+
+    public Instance(Shape prototyp, Mat44 transform) {
+        this.prototyp = prototyp;
+        setTransform(transform);
+    }
+
+    // 运动的实例：快门开始和结束时的变换
+    public Instance(Shape prototyp, Mat44 start, Mat44 end) {
+        this.prototyp = prototyp;
+        setTransform(start, end);
+    }
+
+    public void setTransform(Mat44 transform) {
+        setTransform(transform, transform);
+    }
+
+    public void setTransform(Mat44 start, Mat44 end) {
+        this.trafo = Transform.of(start);
+        this.endTrafo = start.equals(end) ? null : Transform.of(end);
+        BoundingBox b = weltBounds(prototyp.bounds(), start);
+        this.bounds = endTrafo == null ? b : b.extend(weltBounds(prototyp.bounds(), end));
+    }
+
+    private static BoundingBox weltBounds(BoundingBox lokal, Mat44 transform) {
+        if (lokal.equals(BoundingBox.everything) || lokal.equals(BoundingBox.empty)) {
+            return lokal;
+        }
+        return lokal.transform(transform);
+    }
+
+    @Override
+    public Hit intersect(Ray ray) {
+        Transform aktuell = endTrafo == null ? trafo : Transform.interpolate(trafo, endTrafo, ray.time());
+        Hit hit = prototyp.intersect(aktuell.toLocal(ray));
+        if (hit == null || !ray.isWithinBounds(hit.t())) return null;
+        return aktuell.toWorld(hit);
+    }
+
+    @Override
+    public Color getColor() {
+        return prototyp.getColor();
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        return bounds;
+    }
+
+    public Shape getPrototyp() {
+        return prototyp;
+    }
+
+    public boolean isMoving() {
+        return endTrafo != null;
+    }
+
+    public Transform getTransform() {
+        return trafo;
+    }
+}
@@ -0,0 +1,55 @@
+package tools;
+
+/**
+ * 理想漫反射（Lambert）材质，余弦加权采样。
+ */
+public class LambertMaterial extends Material {
+    private final Color albedo;
+    private final Sampler texture; // 可选：按Hit的UV采样颜色
+
+    public LambertMaterial(Color albedo) {
+        this.albedo = albedo;
+        this.texture = null;
+    }
+
+    public LambertMaterial(Sampler texture) {
+        this.albedo = Color.white;
+        this.texture = texture;
+    }
+
+    @Override
+    Color baseColor(Hit hit) {
+        if (texture != null && hit.uv() != null) {
+            return texture.sample(hit.uv());
+        }
+        return albedo;
+    }
+
+    @Override
+    double roughtness(Hit hit) {
+        return 1;
+    }
+
+    @Override
+    public Color evaluate(Hit hit, Vec3 wo, Vec3 wi) {
+        double cos = normale(hit, wo).dot(wi);
+        if (cos <= 0) return Color.black;
+        return baseColor(hit).multiply(cos / Math.PI);
+    }
+
+    @Override
+    public double pdf(Hit hit, Vec3 wo, Vec3 wi) {
+        return Math.max(0, normale(hit, wo).dot(wi)) / Math.PI;
+    }
+
+    @Override
+    public Sample sample(Hit hit, Vec3 wo, Random random) {
+        Vec3 n = normale(hit, wo);
+        // 余弦加权半球采样：f * cos / pdf = albedo
+        double r = Math.sqrt(random.nextDouble());
+        double phi = 2 * Math.PI * random.nextDouble();
+        double z = Math.sqrt(Math.max(0, 1 - r * r));
+        Vec3 wi = zuWelt(n, r * Math.cos(phi), r * Math.sin(phi), z);
+        return new Sample(wi, baseColor(hit), z / Math.PI, false);
+    }
+}
@@ -8,6 +8,29 @@ public interface Lichtquelle {
     boolean isPunktlicht();
     Vec3 getPosition();
 
+    // 光源本身的强度（未衰减），多光源模式用它估计贡献
+    Color getIntensitaet();
+
+    // 面光源：软阴影需要在光源表面上采样
+    default boolean isFlaechenlicht() {
+        return false;
+    }
+
+    // 面光源表面上的一个点，(u, v) ∈ [0,1)²；punkt 是着色点（球光源需要）
+    default Vec3 samplePunkt(Vec3 punkt, double u, double v) {
+        return getPosition();
+    }
+
+    // 每个着色点的阴影样本预算（硬阴影光源为1）
+    default int getSamples() {
+        return 1;
+    }
+
+    // 以 getPosition() 为中心、包含整个光源表面的球的半径（点光源为0）
+    default double getAusdehnung() {
+        return 0;
+    }
+
     // 创建方向光源（外部包通过接口调用，无需访问内部类）
     static Lichtquelle createRichtungslicht(Vec3 richtung, Color intensitaet) {
         return new Richtungslichtquelle(richtung, intensitaet);
@@ -17,6 +40,21 @@ public interface Lichtquelle {
     static Lichtquelle createPunktlicht(Vec3 position, Color intensitaet) {
         return new Punktlichtquelle(position, intensitaet);
     }
+
+    // 创建矩形面光源：mitte为中心，kanteU/kanteV为两条边（长度即边长）
+    static Lichtquelle createRechtecklicht(Vec3 mitte, Vec3 kanteU, Vec3 kanteV, Color intensitaet, int samples) {
+        return new Rechtecklichtquelle(mitte, kanteU, kanteV, intensitaet, samples);
+    }
+
+    // 创建圆盘面光源
+    static Lichtquelle createScheibenlicht(Vec3 mitte, Vec3 normale, double radius, Color intensitaet, int samples) {
+        return new Scheibenlichtquelle(mitte, normale, radius, intensitaet, samples);
+    }
+
+    // 创建球形面光源
+    static Lichtquelle createKugellicht(Vec3 mitte, double radius, Color intensitaet, int samples) {
+        return new Kugellichtquelle(mitte, radius, intensitaet, samples);
+    }
 }
 
 // 平行光源
@@ -52,6 +90,11 @@ class Richtungslichtquelle implements Lichtquelle {
     public Vec3 getPosition() {
         return null;
     }
+
+    @Override
+    public Color getIntensitaet() {
+        return intensitaet;
+    }
 }
 
 // 点光源
@@ -89,4 +132,109 @@ class Punktlichtquelle implements Lichtquelle {
     public Vec3 getPosition() {
         return position;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Color getIntensitaet() {
+        return intensitaet;
+    }
+}
+
+// 面光源的共同部分：着色时和中心处的点光源一样（方向、衰减），
+// 只有阴影测试在光源表面上采样，从而得到软阴影
+abstract class Flaechenlichtquelle extends Punktlichtquelle {
+    private final int samples;
+
+    Flaechenlichtquelle(Vec3 mitte, Color intensitaet, int samples) {
+        super(mitte, intensitaet);
+        this.samples = Math.max(1, samples);
+    }
+
+    @Override
+    public boolean isFlaechenlicht() {
+        return true;
+    }
+
+    @Override
+    public int getSamples() {
+        return samples;
+    }
+
+    // 以 normale 为法向的圆盘上的点（同心映射，保持分层样本的分布）
+    static Vec3 scheibenPunkt(Vec3 mitte, Vec3 normale, double radius, double u, double v) {
+        Vec2 p = LowDiscrepancy.concentricDisk(u, v);
+        Vec3 w = normale.normalize();
+        Vec3 hilfe = Math.abs(w.x()) > 0.9 ? new Vec3(0, 1, 0) : new Vec3(1, 0, 0);
+        Vec3 t = hilfe.cross(w).normalize();
+        Vec3 s = w.cross(t);
+        return mitte.add(t.multiply(radius * p.x())).add(s.multiply(radius * p.y()));
+    }
+}
+
+// 矩形面光源
+class Rechtecklichtquelle extends Flaechenlichtquelle {
+    private final Vec3 ecke;   // mitte - kanteU/2 - kanteV/2
+    private final Vec3 kanteU;
+    private final Vec3 kanteV;
+
+    public Rechtecklichtquelle(Vec3 mitte, Vec3 kanteU, Vec3 kanteV, Color intensitaet, int samples) {
+        super(mitte, intensitaet, samples);
+        this.kanteU = kanteU;
+        this.kanteV = kanteV;
+        this.ecke = mitte.subtract(kanteU.multiply(0.5)).subtract(kanteV.multiply(0.5));
+    }
+
+    @Override
+    public double getAusdehnung() {
+        // 中心到最远的角
+        return 0.5 * Math.max(kanteU.add(kanteV).length(), kanteU.subtract(kanteV).length());
+    }
+
+    @Override
+    public Vec3 samplePunkt(Vec3 punkt, double u, double v) {
+        return ecke.add(kanteU.multiply(u)).add(kanteV.multiply(v));
+    }
+}
+
+// 圆盘面光源
+class Scheibenlichtquelle extends Flaechenlichtquelle {
+    private final Vec3 normale;
+    private final double radius;
+
+    public Scheibenlichtquelle(Vec3 mitte, Vec3 normale, double radius, Color intensitaet, int samples) {
+        super(mitte, intensitaet, samples);
+        this.normale = normale.normalize();
+        this.radius = radius;
+    }
+
+    @Override
+    public Vec3 samplePunkt(Vec3 punkt, double u, double v) {
+        return scheibenPunkt(getPosition(), normale, radius, u, v);
+    }
+
+    @Override
+    public double getAusdehnung() {
+        return radius;
+    }
+}
+
+// 球形面光源：从着色点看过去，球的轮廓是一个圆盘，
+// 所以在垂直于视线（着色点→球心）的圆盘上采样
+class Kugellichtquelle extends Flaechenlichtquelle {
+    private final double radius;
+
+    public Kugellichtquelle(Vec3 mitte, double radius, Color intensitaet, int samples) {
+        super(mitte, intensitaet, samples);
+        this.radius = radius;
+    }
+
+    @Override
+    public Vec3 samplePunkt(Vec3 punkt, double u, double v) {
+        Vec3 zumPunkt = punkt.subtract(getPosition());
+        return scheibenPunkt(getPosition(), zumPunkt, radius, u, v);
+    }
+
+    @Override
+    public double getAusdehnung() {
+        return radius;
+    }
+}
@@ -0,0 +1,129 @@
+package tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 点光源的层次结构（light BVH），用于场景中有大量点光源的情况。
+ *
+ * <p>
+ * 每个节点记录子树中光源的包围盒和总功率。抽样时从根节点往下走，
+ * 在每一层按 "功率 / 距离²" 估计两个子树对着色点的贡献，按比例随机选择，
+ * 同时累乘选择概率得到所选光源的 pdf。每个光源的概率都大于0，
+ * 所以 贡献 / pdf 是所有光源贡献之和的无偏估计。
+ */
+public class LightTree {
+
+    /** 抽样结果：选中的光源和它被选中的概率 */
+    public record Auswahl(Lichtquelle licht, double pdf) {}
+
+    private static final class Knoten {
+        BoundingBox bounds;
+        double leistung;      // 子树中所有光源的功率之和（亮度）
+        Knoten links;
+        Knoten rechts;
+        Lichtquelle licht;    // 只有叶子节点有
+    }
+
+    private final Knoten wurzel;
+    private final Map<Lichtquelle, Boolean> enthalten = new IdentityHashMap<>();
+
+    /**
+     * 用所有有位置的点光源建树，其它光源（方向光）被忽略。
+     */
+    public LightTree(List<Lichtquelle> lichter) {
+        List<Lichtquelle> punktLichter = new ArrayList<>();
+        for (Lichtquelle licht : lichter) {
+            if (licht != null && licht.isPunktlicht() && licht.getPosition() != null) {
+                punktLichter.add(licht);
+                enthalten.put(licht, Boolean.TRUE);
+            }
+        }
+        this.wurzel = punktLichter.isEmpty() ? null : build(punktLichter);
+    }
+
+    public boolean isEmpty() {
+        return wurzel == null;
+    }
+
+    public boolean contains(Lichtquelle licht) {
+        return enthalten.containsKey(licht);
+    }
+
+    /**
+     * 为着色点 p 随机选择一个点光源。
+     *
+     * @param p 着色点
+     * @param u [0,1) 之间的随机数（每一层重新缩放后复用）
+     */
+    public Auswahl sample(Vec3 p, double u) {
+        Knoten knoten = wurzel;
+        double pdf = 1.0;
+        while (knoten.licht == null) {
+            double wl = wichtigkeit(knoten.links, p);
+            double wr = wichtigkeit(knoten.rechts, p);
+            double pl = (wl + wr) > 0 ? wl / (wl + wr) : 0.5;
+            if (u < pl) {
+                u = u / pl;
+                pdf *= pl;
+                knoten = knoten.links;
+            } else {
+                u = (u - pl) / (1 - pl);
+                pdf *= 1 - pl;
+                knoten = knoten.rechts;
+            }
+            u = Math.min(u, 0x1.fffffffffffffp-1); // 防止浮点误差让 u 变成 1
+        }
+        return new Auswahl(knoten.licht, pdf);
+    }
+
+    // 估计一个子树对点 p 的贡献：功率 / 到包围盒中心距离的平方
+    // （距离不小于包围盒半对角线，点在盒内时也不会过大）
+    private static double wichtigkeit(Knoten knoten, Vec3 p) {
+        Vec3 d = knoten.bounds.center().subtract(p);
+        double halbeDiagonale = knoten.bounds.size().length() / 2;
+        double abstandQuadrat = Math.max(d.lengthSquared(), halbeDiagonale * halbeDiagonale);
+        return knoten.leistung / Math.max(abstandQuadrat, 1e-6);
+    }
+
+    // 在最长轴上按中位数二分
+    private static Knoten build(List<Lichtquelle> lichter) {
+        Knoten knoten = new Knoten();
+        BoundingBox bounds = BoundingBox.empty;
+        double leistung = 0;
+        for (Lichtquelle licht : lichter) {
+            bounds = bounds.extend(licht.getPosition());
+            leistung += leistung(licht);
+        }
+        knoten.bounds = bounds;
+        knoten.leistung = leistung;
+
+        if (lichter.size() == 1) {
+            knoten.licht = lichter.get(0);
+            return knoten;
+        }
+
+        Axis axis = bounds.longest();
+        Comparator<Lichtquelle> order = switch (axis) {
+            case X -> Comparator.comparingDouble(l -> l.getPosition().x());
+            case Y -> Comparator.comparingDouble(l -> l.getPosition().y());
+            case Z -> Comparator.comparingDouble(l -> l.getPosition().z());
+        };
+        List<Lichtquelle> sortiert = new ArrayList<>(lichter);
+        sortiert.sort(order);
+        int mitte = sortiert.size() / 2;
+        knoten.links = build(sortiert.subList(0, mitte));
+        knoten.rechts = build(sortiert.subList(mitte, sortiert.size()));
+        return knoten;
+    }
+
+    // 光源功率：强度的亮度（Rec.601权重），至少为一个很小的正数
+    private static double leistung(Lichtquelle licht) {
+        Color c = licht.getIntensitaet();
+        double y = c == null ? 0 : 0.299 * c.r() + 0.587 * c.g() + 0.114 * c.b();
+        return Math.max(y, 1e-9);
+    }
+}
@@ -0,0 +1,169 @@
+package tools;
+
+/**
+ * Low-discrepancy sequences for stratified sampling: Halton, Sobol (first two
+ * dimensions, optionally scrambled) and a tileable blue-noise mask that can be
+ * used to decorrelate the sequences between neighbouring pixels
+ * (Cranley-Patterson rotation), plus the concentric disk mapping that carries
+ * stratified points onto a disk.
+ *
+ * <p>
+ * All methods are pure functions of their arguments and therefore thread-safe.
+ */
+public final class LowDiscrepancy {
+
+  private static final double ONE_MINUS_EPSILON = 0x1.fffffffffffffp-1;
+
+  private LowDiscrepancy() {}
+
+  /**
+   * Radical inverse of index in the given base, the i-th point of the
+   * 1D Halton sequence for that base.
+   */
+  public static double halton(long index, int base) {
+    double inverseBase = 1.0 / base;
+    double factor = inverseBase;
+    double result = 0;
+    while (index > 0) {
+      result += (index % base) * factor;
+      index /= base;
+      factor *= inverseBase;
+    }
+    return result;
+  }
+
+  /**
+   * 2D Halton point (bases 2 and 3).
+   */
+  public static Vec2 halton2D(long index) {
+    return new Vec2(halton(index, 2), halton(index, 3));
+  }
+
+  /**
+   * Sobol sequence, dimension 0 or 1. The scramble value is XORed into the
+   * result bits (random digit scrambling); pass 0 for the plain sequence.
+   */
+  public static double sobol(int index, int dimension, int scramble) {
+    int result = scramble;
+    if (dimension == 0) {
+      // dimension 0 is the van der Corput sequence in base 2
+      result ^= Integer.reverse(index);
+    } else if (dimension == 1) {
+      // direction numbers for the primitive polynomial x + 1
+      int v = 1 << 31;
+      for (int i = index; i != 0; i >>>= 1, v ^= v >>> 1) {
+        if ((i & 1) != 0) result ^= v;
+      }
+    } else {
+      throw new IllegalArgumentException("only Sobol dimensions 0 and 1 are supported");
+    }
+    return Math.min((result & 0xFFFFFFFFL) * 0x1p-32, ONE_MINUS_EPSILON);
+  }
+
+  /**
+   * 2D Sobol point (0,2)-sequence: every power-of-two prefix is perfectly
+   * stratified.
+   */
+  public static Vec2 sobol2D(int index, int scrambleX, int scrambleY) {
+    return new Vec2(sobol(index, 0, scrambleX), sobol(index, 1, scrambleY));
+  }
+
+  /**
+   * Adds an offset modulo 1 (Cranley-Patterson rotation).
+   */
+  public static double rotate(double value, double offset) {
+    double r = value + offset;
+    return r >= 1 ? r - 1 : r;
+  }
+
+  // ---------------------------------------------------------------------------
+  // Disk mapping
+
+  /**
+   * Concentric (Shirley-Chiu) mapping of a point in [0,1)^2 to the unit disk.
+   * Unlike the polar mapping it keeps stratified samples stratified and
+   * preserves relative areas. Used for lens apertures and disk lights.
+   */
+  public static Vec2 concentricDisk(double u, double v) {
+    double a = 2 * u - 1;
+    double b = 2 * v - 1;
+    if (a == 0 && b == 0) {
+      return new Vec2(0, 0);
+    }
+    double r;
+    double phi;
+    if (Math.abs(a) > Math.abs(b)) {
+      r = a;
+      phi = (Math.PI / 4) * (b / a);
+    } else {
+      r = b;
+      phi = (Math.PI / 2) - (Math.PI / 4) * (a / b);
+    }
+    return new Vec2(r * Math.cos(phi), r * Math.sin(phi));
+  }
+
+  // ---------------------------------------------------------------------------
+  // Blue noise
+
+  private static final int BLUE_NOISE_SIZE = 64;
+
+  /**
+   * Blue-noise threshold in [0,1) for pixel (x, y); the 64x64 mask tiles the
+   * plane. Neighbouring values are as different as possible, so using it to
+   * rotate a sequence per pixel spreads the error as high-frequency noise.
+   */
+  public static double blueNoise(int x, int y) {
+    int s = BLUE_NOISE_SIZE;
+    return BlueNoiseMask.MASK[Math.floorMod(y, s) * s + Math.floorMod(x, s)];
+  }
+
+  // Lazily built mask (initialization-on-demand holder)
+  private static final class BlueNoiseMask {
+    static final double[] MASK = build(BLUE_NOISE_SIZE, 1.9);
+
+    /**
+     * Void filling: repeatedly pick the pixel with the lowest energy (the
+     * largest void among the pixels placed so far) and give it the next rank.
+     * The energy is a toroidal Gaussian around every placed pixel.
+     */
+    private static double[] build(int size, double sigma) {
+      int n = size * size;
+      int radius = (int) Math.ceil(3 * sigma);
+      int width = 2 * radius + 1;
+      double[] kernel = new double[width * width];
+      for (int dy = -radius; dy <= radius; dy++) {
+        for (int dx = -radius; dx <= radius; dx++) {
+          kernel[(dy + radius) * width + dx + radius] =
+              Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+        }
+      }
+
+      // tiny fixed jitter breaks ties so the first points are not in scanline order
+      Random random = new Random(0xB1E5EEDL);
+      double[] energy = new double[n];
+      for (int i = 0; i < n; i++) energy[i] = random.nextDouble() * 1e-9;
+
+      boolean[] placed = new boolean[n];
+      double[] mask = new double[n];
+      for (int rank = 0; rank < n; rank++) {
+        int best = -1;
+        for (int i = 0; i < n; i++) {
+          if (!placed[i] && (best < 0 || energy[i] < energy[best])) best = i;
+        }
+        placed[best] = true;
+        mask[best] = (rank + 0.5) / n;
+
+        int bx = best % size;
+        int by = best / size;
+        for (int dy = -radius; dy <= radius; dy++) {
+          int y = Math.floorMod(by + dy, size);
+          for (int dx = -radius; dx <= radius; dx++) {
+            int x = Math.floorMod(bx + dx, size);
+            energy[y * size + x] += kernel[(dy + radius) * width + dx + radius];
+          }
+        }
+      }
+      return mask;
+    }
+  }
+}
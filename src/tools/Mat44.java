@@ -250,56 +250,27 @@ public final class Mat44 {
         return n;
     }
 
-    public Mat44 invert() {
-        Mat44 inv = new Mat44(); // 初始化为单位矩阵
-    
-        // --- 1. 处理旋转部分 ---
-        // 原来的代码只能处理Y轴，现在我们要处理任意旋转。
-        // 旋转矩阵的逆 = 转置 (Transpose)，也就是把 行 变成 列。
-        
-        // 读取原矩阵的“基向量”（这代表了X, Y, Z轴的方向）
-        // 第一列 (X轴方向)
-        double r00 = get(0, 0); 
-        double r10 = get(0, 1); 
-        double r20 = get(0, 2);
-        
-        // 第二列 (Y轴方向)
-        double r01 = get(1, 0); 
-        double r11 = get(1, 1); 
-        double r21 = get(1, 2);
-        
-        // 第三列 (Z轴方向)
-        double r02 = get(2, 0); 
-        double r12 = get(2, 1); 
-        double r22 = get(2, 2);
-    
-        // 设置到逆矩阵中：行列互换 (注意看 set 的坐标变化)
-        // 例如：原矩阵的 (1,0) 放到新矩阵的 (0,1)
-        inv.set(0, 0, r00); inv.set(1, 0, r10); inv.set(2, 0, r20);
-        inv.set(0, 1, r01); inv.set(1, 1, r11); inv.set(2, 1, r21);
-        inv.set(0, 2, r02); inv.set(1, 2, r12); inv.set(2, 2, r22);
-
-        // --- 2. 处理平移部分 ---
-        // 原矩阵的平移量
-        double tx = get(3, 0);
-        double ty = get(3, 1);
-        double tz = get(3, 2);
-
-        // 逆平移不仅仅是取反 (-tx)，因为坐标轴旋转了，
-        // 我们需要计算： - (旋转部分的转置 * 平移量)
-        // 这其实就是点积运算：
-        double invTx = -(r00 * tx + r10 * ty + r20 * tz);
-        double invTy = -(r01 * tx + r11 * ty + r21 * tz);
-        double invTz = -(r02 * tx + r12 * ty + r22 * tz);
+    /**
+     * 逐元素线性插值 (1-t)·a + t·b（运动模糊的关键帧之间）。
+     * 点的轨迹是关键帧位置之间的直线，所以包围盒取两个关键帧的并集就包含整个运动。
+     */
+    public static Mat44 interpolate(Mat44 a, Mat44 b, double t) {
+        Mat44 n = new Mat44();
+        for (int i = 0; i < 16; i++) {
+            n.values[i] = (1 - t) * a.values[i] + t * b.values[i];
+        }
+        return n;
+    }
 
-        inv.set(3, 0, invTx);
-        inv.set(3, 1, invTy);
-        inv.set(3, 2, invTz);
-    
-        // 保持齐次坐标的 1
-        inv.set(3, 3, 1.0);
-    
-        return inv;
+    /**
+     * 逆矩阵。仿射矩阵（最后一行为 0 0 0 1）按 Transform 的分类用最便宜的方法求逆
+     * （旋转 + 平移只需转置，有缩放或剪切时用伴随矩阵），其他矩阵用 Functions.invert。
+     */
+    public Mat44 invert() {
+        if (get(0, 3) == 0 && get(1, 3) == 0 && get(2, 3) == 0 && get(3, 3) == 1) {
+            return Transform.of(this).inverse().toMat44();
+        }
+        return Functions.invert(this);
     }
 
 
@@ -393,10 +364,10 @@ public final class Mat44 {
      * 点的齐次坐标为 (x, y, z, 1)
      */
     public Vec3 multiplyPoint(Vec3 point) {
-        // 列主序矩阵 × 点的计算（矩阵列 × 点的行向量）
-        double x = point.x() * get(0, 0) + point.y() * get(0, 1) + point.z() * get(0, 2) + get(0, 3);
-        double y = point.x() * get(1, 0) + point.y() * get(1, 1) + point.z() * get(1, 2) + get(1, 3);
-        double z = point.x() * get(2, 0) + point.y() * get(2, 1) + point.z() * get(2, 2) + get(2, 3);
+        // get(列, 行)：结果的第r个分量 = 第r行 · (x, y, z, 1)，和 Functions.multiplyPoint 相同
+        double x = point.x() * get(0, 0) + point.y() * get(1, 0) + point.z() * get(2, 0) + get(3, 0);
+        double y = point.x() * get(0, 1) + point.y() * get(1, 1) + point.z() * get(2, 1) + get(3, 1);
+        double z = point.x() * get(0, 2) + point.y() * get(1, 2) + point.z() * get(2, 2) + get(3, 2);
         return new Vec3(x, y, z);
     }
 
@@ -406,9 +377,9 @@ public final class Mat44 {
      */
     public Vec3 multiplyDirection(Vec3 dir) {
         // 列主序矩阵 × 方向向量（忽略平移分量）
-        double x = dir.x() * get(0, 0) + dir.y() * get(0, 1) + dir.z() * get(0, 2);
-        double y = dir.x() * get(1, 0) + dir.y() * get(1, 1) + dir.z() * get(1, 2);
-        double z = dir.x() * get(2, 0) + dir.y() * get(2, 1) + dir.z() * get(2, 2);
+        double x = dir.x() * get(0, 0) + dir.y() * get(1, 0) + dir.z() * get(2, 0);
+        double y = dir.x() * get(0, 1) + dir.y() * get(1, 1) + dir.z() * get(2, 1);
+        double z = dir.x() * get(0, 2) + dir.y() * get(1, 2) + dir.z() * get(2, 2);
         return new Vec3(x, y, z);
     }
 
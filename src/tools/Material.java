@@ -1,17 +1,82 @@
 package tools;
 
-public class Material {
-     
+/**
+ * 表面材质（BSDF），PathTracer 用它计算散射和自发光。
+ *
+ * <p>
+ * 约定：wo 指向观察者（入射射线方向取反），wi 指向光源/下一条射线方向，
+ * 两者都是单位向量。evaluate() 返回 f(wo, wi) * |cos(n, wi)|。
+ */
+public abstract class Material {
+
+    /**
+     * 重要性采样结果
+     *
+     * @param richtung  采样到的方向 wi
+     * @param gewicht   f * cos / pdf（路径吞吐量要乘的权重）
+     * @param pdf       立体角上的概率密度（镜面方向时无意义）
+     * @param spiegelnd 是否为镜面（delta）方向，镜面方向不做光源采样
+     */
+    public record Sample(Vec3 richtung, Color gewicht, double pdf, boolean spiegelnd) {}
+
     Color baseColor(Hit hit) {
-        return null;
+        return Color.black;
     }
 
     Color specular(Hit hit) {
-        return null;
+        return Color.black;
     }
 
     double roughtness(Hit hit) {
         return 0;
     }
-    
+
+    // 自发光（默认不发光）
+    public Color emission(Hit hit) {
+        return Color.black;
+    }
+
+    // 只有镜面（delta）散射的材质，不能做光源采样
+    public boolean isSpecular() {
+        return false;
+    }
+
+    public abstract Color evaluate(Hit hit, Vec3 wo, Vec3 wi);
+
+    public abstract double pdf(Hit hit, Vec3 wo, Vec3 wi);
+
+    // 返回null表示光线被吸收
+    public abstract Sample sample(Hit hit, Vec3 wo, Random random);
+
+    // ========== 工具方法 ==========
+
+    // 朝向观察者一侧的法向量（不透明材质从背面被击中时翻转）
+    protected static Vec3 normale(Hit hit, Vec3 wo) {
+        Vec3 n = hit.normal().normalize();
+        return n.dot(wo) < 0 ? n.negate() : n;
+    }
+
+    // 把以法向量n为z轴的局部方向转换到世界坐标
+    protected static Vec3 zuWelt(Vec3 n, double x, double y, double z) {
+        Vec3 hilfe = Math.abs(n.x()) > 0.9 ? new Vec3(0, 1, 0) : new Vec3(1, 0, 0);
+        Vec3 t = hilfe.cross(n).normalize();
+        Vec3 b = n.cross(t);
+        return t.multiply(x).add(b.multiply(y)).add(n.multiply(z));
+    }
+
+    // Schlick近似的菲涅尔反射率
+    protected static double schlick(double cos, double f0) {
+        double m = 1 - cos;
+        return f0 + (1 - f0) * m * m * m * m * m;
+    }
+
+    protected static Color schlick(double cos, Color f0) {
+        double m = 1 - cos;
+        double m5 = m * m * m * m * m;
+        return new Color(
+            f0.r() + (1 - f0.r()) * m5,
+            f0.g() + (1 - f0.g()) * m5,
+            f0.b() + (1 - f0.b()) * m5,
+            1);
+    }
 }
@@ -0,0 +1,48 @@
+package tools;
+
+/**
+ * 理想镜面（金属镜子）：只有反射方向，反射率按Schlick菲涅尔随角度变化。
+ */
+public class MirrorMaterial extends Material {
+    private final Color f0; // 正入射时的反射率
+
+    public MirrorMaterial(Color f0) {
+        this.f0 = f0;
+    }
+
+    public Color f0() {
+        return f0;
+    }
+
+    @Override
+    Color baseColor(Hit hit) {
+        return f0;
+    }
+
+    @Override
+    Color specular(Hit hit) {
+        return f0;
+    }
+
+    @Override
+    public boolean isSpecular() {
+        return true;
+    }
+
+    @Override
+    public Color evaluate(Hit hit, Vec3 wo, Vec3 wi) {
+        return Color.black; // 只有delta方向
+    }
+
+    @Override
+    public double pdf(Hit hit, Vec3 wo, Vec3 wi) {
+        return 0;
+    }
+
+    @Override
+    public Sample sample(Hit hit, Vec3 wo, Random random) {
+        Vec3 n = normale(hit, wo);
+        Vec3 wi = Functions.reflect(n, wo.negate()).normalize();
+        return new Sample(wi, schlick(Math.max(0, n.dot(wo)), f0), 1, true);
+    }
+}
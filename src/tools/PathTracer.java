@@ -0,0 +1,455 @@
+package tools;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 基于物理的蒙特卡洛路径追踪器（和 SimpleRayTracer 使用同样的相机、场景和光源）。
+ *
+ * <p>
+ * 材质来自 Shape.getMaterial()，没有材质的物体按 Lambert 漫反射处理（颜色同 SimpleRayTracer）。
+ * 每个非镜面交点做一次光源采样（next-event estimation）：
+ * 点光源/方向光/面光源（Lichtquelle）是不可被射线击中的光源，权重为1；
+ * 场景中带 EmissiveMaterial 的球体（也包括 Group、Bvh 和 Instance 里的）同时可以被BSDF采样击中，
+ * 两种采样用多重重要性采样（power heuristic）合并。不均匀缩放（椭球）或运动的发光球不能按圆锥采样，
+ * 只能被BSDF采样击中。路径在几次反弹之后用俄罗斯轮盘赌终止。
+ *
+ * <p>
+ * 渲染按遍（pass）渐进进行：每遍每个像素加一个样本，累加到缓冲区，
+ * 每遍结束后把当前平均值写入图像。每个行块、每一遍都用由种子确定的独立随机流
+ * （Random.stream），所以图像可复现，与线程数无关。
+ *
+ * <p>
+ * 长时间的渲染可以打开检查点（setCheckpoint）：每完成一个行块，它的累加值和遍数
+ * 就写进一个内存映射的文件（见 Checkpoint），进程崩溃后用 resume 从文件继续，
+ * 结果和没有中断时完全相同。渲染完以后调用 close()，检查点文件最后一次写盘并关闭。
+ */
+public class PathTracer implements AutoCloseable {
+    private static final double EPSILON = 0.001;
+
+    private final SimpleCamera camera;
+    private final List<Shape> scene;
+    private final EnvironmentSampler hintergrund;
+    private final List<Lichtquelle> lichtquelle;
+    // 可被采样的发光球：场景中的叶子和它在世界坐标系中的副本（Group 或 Instance 里的球已经变换过）
+    private record Emitter(Sphere blatt, Sphere welt) {}
+    private final List<Emitter> emitter = new ArrayList<>();
+    private final Map<Shape, List<Emitter>> emitterVon = new IdentityHashMap<>(); // 一个原型的球可以有多个实例
+
+    private int maxTiefe = 16;        // 最大反弹次数
+    private int rouletteAb = 3;       // 从第几次反弹开始俄罗斯轮盘赌
+
+    // 渐进累加
+    private double[] akkumulator;
+    private int durchgaenge = 0;
+    private int width;
+    private int height;
+
+    // 每个（行块, 遍）有自己确定的随机流：结果只取决于种子，与线程数无关
+    private long seed = 0x5EEDL;
+
+    // 检查点（可选）
+    private static final int BLOCK_HOEHE = 8;
+    private Path checkpointDatei;
+    private double checkpointIntervall;
+    private long checkpointSzene;
+    private Checkpoint checkpoint;
+
+    public PathTracer(
+        SimpleCamera camera,
+        List<Shape> scene,
+        EnvironmentSampler hintergrund,
+        List<Lichtquelle> lichtquelle
+    ) {
+        this.camera = camera;
+        this.scene = scene;
+        this.hintergrund = hintergrund;
+        this.lichtquelle = lichtquelle == null ? List.of() : lichtquelle;
+
+        for (Shape shape : scene) {
+            emitterSammeln(shape, new ArrayList<>());
+        }
+    }
+
+    // 在场景层次中查找发光球，pfad 是从顶层到 shape 的变换
+    private void emitterSammeln(Shape shape, List<Transform> pfad) {
+        if (shape instanceof Sphere kugel && kugel.getMaterial() instanceof EmissiveMaterial) {
+            Vec3 mitte = kugel.center();
+            double radius = kugel.radius();
+            for (int i = pfad.size() - 1; i >= 0; i--) {
+                Transform t = pfad.get(i);
+                if (t.art() == Transform.Art.AFFIN) return; // 变换后是椭球
+                Vec3 m = t.pointToWorld(mitte);
+                radius *= t.pointToWorld(mitte.add(new Vec3(1, 0, 0))).subtract(m).length();
+                mitte = m;
+            }
+            Emitter e = new Emitter(kugel, pfad.isEmpty() ? kugel
+                                               : new Sphere(mitte, radius, kugel.getColor(), kugel.getMaterial()));
+            emitter.add(e);
+            emitterVon.computeIfAbsent(kugel, k -> new ArrayList<>()).add(e);
+        } else if (shape instanceof Group g && !g.isMoving()) {
+            pfad.add(Transform.of(g.getTransform()));
+            for (Shape kind : g.getChildren()) {
+                if (kind != null) emitterSammeln(kind, pfad);
+            }
+            pfad.remove(pfad.size() - 1);
+        } else if (shape instanceof Instance inst && !inst.isMoving()) {
+            pfad.add(inst.getTransform());
+            emitterSammeln(inst.getPrototyp(), pfad);
+            pfad.remove(pfad.size() - 1);
+        } else if (shape instanceof Bvh bvh) {
+            for (Shape kind : bvh.getShapes()) {
+                emitterSammeln(kind, pfad);
+            }
+        }
+    }
+
+    // 被击中的发光球在世界坐标系中的副本：交点在它的表面上（不能采样的发光球返回null）
+    private Emitter emitter(Hit hit) {
+        List<Emitter> kandidaten = emitterVon.get(hit.shape());
+        if (kandidaten == null) return null;
+        for (Emitter e : kandidaten) {
+            Sphere k = e.welt();
+            if (Math.abs(hit.position().subtract(k.center()).length() - k.radius()) < 1e-3 * k.radius()) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    public void setMaxDepth(int maxTiefe) {
+        this.maxTiefe = maxTiefe;
+    }
+
+    public void setRouletteDepth(int rouletteAb) {
+        this.rouletteAb = rouletteAb;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int passes() {
+        return durchgaenge;
+    }
+
+    /**
+     * 把渲染进度保存到 datei（内存映射，每个行块完成时更新），每隔 sekunden 秒写一次磁盘。
+     * szene 是场景内容的哈希（例如场景文件的字节）：文件里已有的同一幅图像（大小、种子和场景的哈希
+     * 都相同）的进度用 resume 继续，否则在第一次 render 时覆盖。
+     */
+    public void setCheckpoint(Path datei, double sekunden, long szene) {
+        this.checkpointDatei = datei;
+        this.checkpointIntervall = sekunden;
+        this.checkpointSzene = szene;
+    }
+
+    /**
+     * 从 setCheckpoint 指定的文件继续：恢复累加值，当前这一遍已经完成的行块不再追踪。
+     * 之后调用 render(image, 目标遍数 - passes()) 完成剩下的部分。
+     *
+     * @return 恢复的完整遍数（文件不存在或不是同一幅图像时为0，从头开始）
+     */
+    public int resume(Image image) {
+        if (checkpointDatei == null) {
+            throw new IllegalStateException("no checkpoint file set");
+        }
+        oeffnen(image, true);
+        if (checkpoint.passt()) {
+            durchgaenge = checkpoint.laden(akkumulator);
+            if (durchgaenge > 0) {
+                schreiben(image);
+            }
+        }
+        return durchgaenge;
+    }
+
+    /**
+     * 关闭检查点文件（先写盘）。没有检查点时什么也不做。
+     */
+    @Override
+    public void close() {
+        if (checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
+        }
+    }
+
+    private void oeffnen(Image image, boolean fortsetzen) {
+        close();
+        width = image.width();
+        height = image.height();
+        akkumulator = new double[width * height * 3];
+        durchgaenge = 0;
+        checkpoint = new Checkpoint(checkpointDatei, width, height, BLOCK_HOEHE, seed, checkpointSzene,
+                                    checkpointIntervall, fortsetzen);
+    }
+
+    /**
+     * 渐进渲染：再累加 samplesPerPixel 遍，每遍结束后更新图像。
+     * 多次调用会在已有样本上继续累加。
+     */
+    public void render(Image image, int samplesPerPixel, int threads) {
+        if (akkumulator == null || width != image.width() || height != image.height()) {
+            if (checkpointDatei != null) {
+                oeffnen(image, false);
+            } else {
+                width = image.width();
+                height = image.height();
+                akkumulator = new double[width * height * 3];
+                durchgaenge = 0;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int s = 0; s < samplesPerPixel; s++) {
+                List<Future<?>> zeilen = new ArrayList<>();
+                for (int y0 = 0; y0 < height; y0 += BLOCK_HOEHE) {
+                    final int von = y0;
+                    final int bis = Math.min(height, y0 + BLOCK_HOEHE);
+                    final int pass = durchgaenge;
+                    final int block = y0 / BLOCK_HOEHE;
+                    if (checkpoint != null && checkpoint.passes(block) > pass) {
+                        continue; // 恢复前已经完成
+                    }
+                    zeilen.add(pool.submit(() -> {
+                        renderZeilen(von, bis, pass);
+                        if (checkpoint != null) {
+                            checkpoint.blockSpeichern(block, von, bis, pass + 1, akkumulator);
+                        }
+                    }));
+                }
+                for (Future<?> f : zeilen) {
+                    f.get();
+                }
+                durchgaenge++;
+                schreiben(image);
+                System.out.format("pass %d/%d\n", s + 1, samplesPerPixel);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("path tracing failed", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void render(Image image, int samplesPerPixel) {
+        render(image, samplesPerPixel, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void renderZeilen(int von, int bis, int pass) {
+        Random random = Random.stream(seed, von, pass);
+        for (int y = von; y < bis; y++) {
+            for (int x = 0; x < width; x++) {
+                // 像素内抖动（抗锯齿）：各遍依次取Halton点，用蓝噪声按像素旋转，
+                // 相邻像素的样本位置互不相关
+                double jx = LowDiscrepancy.rotate(LowDiscrepancy.halton(pass, 2), LowDiscrepancy.blueNoise(x, y));
+                double jy = LowDiscrepancy.rotate(LowDiscrepancy.halton(pass, 3), LowDiscrepancy.blueNoise(x + 32, y + 17));
+                Vec2 pixel = new Vec2(x + jx - 0.5, y + jy - 0.5);
+                // 快门时间和镜头位置是同一个Halton点的其他维度（运动模糊和景深不需要额外的样本）
+                double zeit = LowDiscrepancy.rotate(LowDiscrepancy.halton(pass, 5), LowDiscrepancy.blueNoise(x + 11, y + 47));
+                Vec2 lens = new Vec2(
+                    LowDiscrepancy.rotate(LowDiscrepancy.halton(pass, 7), LowDiscrepancy.blueNoise(x + 53, y + 5)),
+                    LowDiscrepancy.rotate(LowDiscrepancy.halton(pass, 11), LowDiscrepancy.blueNoise(x + 23, y + 61)));
+                Color c = radiance(camera.generateRay(pixel, lens, zeit), random);
+                int i = (y * width + x) * 3;
+                akkumulator[i] += c.r();
+                akkumulator[i + 1] += c.g();
+                akkumulator[i + 2] += c.b();
+            }
+        }
+    }
+
+    private void schreiben(Image image) {
+        double scale = 1.0 / durchgaenge;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (y * width + x) * 3;
+                image.setPixel(x, y, new Color(akkumulator[i] * scale, akkumulator[i + 1] * scale,
+                    akkumulator[i + 2] * scale, 1));
+            }
+        }
+    }
+
+    /**
+     * 一条路径的辐射亮度估计
+     */
+    public Color radiance(Ray ray, Random random) {
+        Color ergebnis = Color.black;
+        Color durchsatz = Color.white;   // 路径吞吐量
+        boolean letzteSpiegelnd = true;  // 上一次散射是否为delta方向（相机射线也算）
+        double letztePdf = 0;
+        Vec3 letzterPunkt = null;
+        double zeit = ray.time();        // 整条路径使用同一个快门时间
+
+        for (int tiefe = 0; tiefe <= maxTiefe; tiefe++) {
+            Hit hit = findClosestHit(ray);
+            if (hit == null) {
+                ergebnis = ergebnis.add(durchsatz.multiplyWithColor(hintergrund.sample(ray.direction())));
+                break;
+            }
+
+            Material material = material(hit);
+            Vec3 wo = ray.direction().negate();
+
+            // 击中发光表面
+            Color le = material.emission(hit);
+            if (!istSchwarz(le)) {
+                double w = 1;
+                Emitter e = letzteSpiegelnd ? null : emitter(hit);
+                if (e != null) {
+                    double lichtPdf = kegelPdf(letzterPunkt, e.welt()) / emitter.size();
+                    w = powerHeuristic(letztePdf, lichtPdf);
+                }
+                ergebnis = ergebnis.add(durchsatz.multiplyWithColor(le).multiply(w));
+            }
+
+            // 光源采样（next-event estimation）
+            if (!material.isSpecular()) {
+                ergebnis = ergebnis.add(durchsatz.multiplyWithColor(direktesLicht(hit, material, wo, zeit, random)));
+            }
+
+            // BSDF采样下一条射线
+            Material.Sample sample = material.sample(hit, wo, random);
+            if (sample == null || istSchwarz(sample.gewicht())) {
+                break;
+            }
+            durchsatz = durchsatz.multiplyWithColor(sample.gewicht());
+
+            // 俄罗斯轮盘赌
+            if (tiefe >= rouletteAb) {
+                double q = Math.min(0.95, Math.max(durchsatz.r(), Math.max(durchsatz.g(), durchsatz.b())));
+                if (random.nextDouble() >= q) {
+                    break;
+                }
+                durchsatz = durchsatz.multiply(1 / q);
+            }
+
+            letzteSpiegelnd = sample.spiegelnd();
+            letztePdf = sample.pdf();
+            letzterPunkt = hit.position();
+            ray = new Ray(versetzt(hit, sample.richtung()), sample.richtung(), EPSILON, Double.POSITIVE_INFINITY, zeit);
+        }
+        return ergebnis;
+    }
+
+    // 所有光源的直接光照
+    private Color direktesLicht(Hit hit, Material material, Vec3 wo, double zeit, Random random) {
+        Color summe = Color.black;
+        Vec3 p = hit.position();
+
+        // 1. Lichtquelle：点光源、方向光、面光源（不会被射线击中，不需要MIS）
+        for (Lichtquelle licht : lichtquelle) {
+            if (licht == null) continue;
+            Vec3 wi;
+            double abstand;
+            Color einfallend;
+            if (licht.isPunktlicht()) {
+                // 面光源：在表面上随机取一点，按该点当作点光源
+                Vec3 q = licht.samplePunkt(p, random.nextDouble(), random.nextDouble());
+                Vec3 zumLicht = q.subtract(p);
+                abstand = zumLicht.length();
+                wi = zumLicht.multiply(1 / abstand);
+                einfallend = licht.getIntensitaet().multiply(1.0 / (abstand * abstand + 1e-6));
+            } else {
+                wi = licht.richtung(p).normalize();
+                abstand = Double.POSITIVE_INFINITY;
+                einfallend = licht.einfallend(p);
+            }
+            Color f = material.evaluate(hit, wo, wi);
+            if (istSchwarz(f)) continue;
+            if (!sichtbar(hit, wi, abstand - EPSILON, zeit)) continue;
+            summe = summe.add(f.multiplyWithColor(einfallend));
+        }
+
+        // 2. 发光球：均匀选一个，在它张成的圆锥内采样，和BSDF采样做MIS
+        if (!emitter.isEmpty()) {
+            Sphere kugel = emitter.get(random.nextInt(emitter.size())).welt();
+            Vec3 zurMitte = kugel.center().subtract(p);
+            double d2 = zurMitte.lengthSquared();
+            double r2 = kugel.radius() * kugel.radius();
+            if (d2 > r2) {
+                double cosMax = Math.sqrt(1 - r2 / d2);
+                double cos = 1 - random.nextDouble() * (1 - cosMax);
+                double sin = Math.sqrt(Math.max(0, 1 - cos * cos));
+                double phi = 2 * Math.PI * random.nextDouble();
+                Vec3 wi = Material.zuWelt(zurMitte.normalize(), sin * Math.cos(phi), sin * Math.sin(phi), cos);
+
+                Hit lichtHit = kugel.intersect(new Ray(p, wi, EPSILON, Double.POSITIVE_INFINITY, zeit));
+                Color f = material.evaluate(hit, wo, wi);
+                if (lichtHit != null && !istSchwarz(f) && sichtbar(hit, wi, lichtHit.t() - 2 * EPSILON, zeit)) {
+                    double lichtPdf = 1 / (2 * Math.PI * (1 - cosMax)) / emitter.size();
+                    double w = powerHeuristic(lichtPdf, material.pdf(hit, wo, wi));
+                    Color le = kugel.getMaterial().emission(lichtHit);
+                    summe = summe.add(f.multiplyWithColor(le).multiply(w / lichtPdf));
+                }
+            }
+        }
+        return summe;
+    }
+
+    // 从p看发光球时，圆锥采样的立体角pdf（p在球内时为0）
+    private static double kegelPdf(Vec3 p, Sphere kugel) {
+        double d2 = kugel.center().subtract(p).lengthSquared();
+        double r2 = kugel.radius() * kugel.radius();
+        if (d2 <= r2) return 0;
+        double cosMax = Math.sqrt(1 - r2 / d2);
+        return 1 / (2 * Math.PI * (1 - cosMax));
+    }
+
+    private static double powerHeuristic(double a, double b) {
+        double a2 = a * a;
+        double b2 = b * b;
+        return a2 + b2 == 0 ? 0 : a2 / (a2 + b2);
+    }
+
+    // 从交点沿wi方向到tMax之间是否没有遮挡
+    private boolean sichtbar(Hit hit, Vec3 wi, double tMax, double zeit) {
+        Ray shadowRay = new Ray(versetzt(hit, wi), wi, EPSILON, tMax, zeit);
+        for (Shape shape : scene) {
+            if (shape == null) continue;
+            Hit h = shape.intersect(shadowRay);
+            if (h != null && shadowRay.isWithinBounds(h.t())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 新射线起点：沿法向量向射线所在一侧偏移，避免自相交
+    private static Vec3 versetzt(Hit hit, Vec3 richtung) {
+        Vec3 n = hit.normal().normalize();
+        return hit.position().add(n.multiply(n.dot(richtung) > 0 ? EPSILON : -EPSILON));
+    }
+
+    private Material material(Hit hit) {
+        Material m = hit.shape().getMaterial();
+        if (m != null) return m;
+        return new LambertMaterial(SimpleRayTracer.objektFarbe(hit));
+    }
+
+    private Hit findClosestHit(Ray ray) {
+        Hit closestHit = null;
+        double minT = Double.POSITIVE_INFINITY;
+        for (Shape shape : scene) {
+            if (shape == null) continue;
+            Hit hit = shape.intersect(ray);
+            if (hit != null && hit.t() < minT && ray.isWithinBounds(hit.t())) {
+                minT = hit.t();
+                closestHit = hit;
+            }
+        }
+        return closestHit;
+    }
+
+    private static boolean istSchwarz(Color c) {
+        return c.r() <= 0 && c.g() <= 0 && c.b() <= 0;
+    }
+}
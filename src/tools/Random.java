@@ -1,6 +1,8 @@
 
 package tools;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * A faster replacement for java.util.Random.
@@ -8,6 +10,14 @@ package tools;
  * <p>
  * Adapted from
  * http://dsiutils.di.unimi.it/docs/it/unimi/dsi/util/SplitMix64Random.html
+ *
+ * <p>
+ * Instances are not thread-safe. The static helpers (random(), used by
+ * Functions.random()) draw from a per-thread generator, so they never race.
+ * For reproducible parallel sampling derive independent streams with
+ * stream(seed, index...) -- e.g. one per pixel or per tile and pass -- or
+ * split() an existing generator. The result then only depends on the seed,
+ * not on the number of threads or on scheduling.
  */
 public class Random extends java.util.Random {
   private static final long serialVersionUID = 1L;
@@ -15,9 +25,13 @@ public class Random extends java.util.Random {
 
   private long x;
 
-  static Random generator;
-
-  static { generator = new Random(); }
+  // base seed of all derived streams; fixed so that runs are reproducible,
+  // seed() resets it
+  private static volatile long baseSeed = 0x5EEDL;
+  private static volatile int epoch = 0;
+  private static final AtomicLong threadCounter = new AtomicLong();
+  private static final ThreadLocal<Random> perThread = new ThreadLocal<>();
+  private int createdInEpoch;
 
   /**
    * Produces a pseudo random number from the interval [0,1]. A direct
@@ -25,13 +39,53 @@ public class Random extends java.util.Random {
    *
    * @return A pseudo random number from the interval [0,1].
    */
-  protected static double random() { return generator.nextDouble(); }
+  protected static double random() { return generator().nextDouble(); }
+
+  protected static void seed(int s) {
+    baseSeed = s;
+    threadCounter.set(0);
+    epoch++;
+  }
+
+  /**
+   * The calling thread's own generator, derived from the base seed.
+   */
+  static Random generator() {
+    Random r = perThread.get();
+    if (r == null || r.createdInEpoch != epoch) {
+      r = stream(baseSeed, threadCounter.getAndIncrement());
+      r.createdInEpoch = epoch;
+      perThread.set(r);
+    }
+    return r;
+  }
+
+  static long baseSeed() { return baseSeed; }
+
+  /**
+   * A deterministic stream for the given seed and index (e.g. pixel or tile
+   * number). Different indices give statistically independent streams.
+   */
+  public static Random stream(long seed, long index) {
+    return new Random(staffordMix13(staffordMix13(seed) + index * PHI));
+  }
 
-  protected static void seed(int s) { generator = new Random(s); }
+  /**
+   * A deterministic stream for a two-part index, e.g. (tile, pass) or (x, y).
+   */
+  public static Random stream(long seed, long a, long b) {
+    return stream(staffordMix13(seed + a * PHI), b);
+  }
 
-  private Random() { this(System.nanoTime()); }
+  /**
+   * Splits off a new generator whose sequence is independent of this one.
+   * Advances this generator by one step.
+   */
+  public Random split() {
+    return new Random(staffordMix13(nextLong() ^ 0xD1B54A32D192ED03L));
+  }
 
-  private Random(final long seed) { x = seed; }
+  Random(final long seed) { x = seed; }
 
   private static long staffordMix13(long z) {
     z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
@@ -5,12 +5,37 @@ public class Ray {
     private final Vec3 d;       // 射线方向
     private final double tmin;  // 最小t值
     private final double tmax;  // 最大t值
+    private final double time;  // 快门时间 [0,1)，运动模糊用（运动物体在这个时刻的位置）
 
     public Ray(Vec3 x, Vec3 d, double tmin, double tmax) {
+        this(x, d, tmin, tmax, 0);
+    }
+
+    public Ray(Vec3 x, Vec3 d, double tmin, double tmax, double time) {
+        this(x, d, tmin, tmax, time, true);  // 确保方向向量归一化
+    }
+
+    // 不归一化的射线只通过 unnormalisiert 和 withTime 创建
+    private Ray(Vec3 x, Vec3 d, double tmin, double tmax, double time, boolean normalisieren) {
         this.x = x;
-        this.d = d.normalize();  // 确保方向向量归一化
+        this.d = normalisieren ? d.normalize() : d;
         this.tmin = tmin;
         this.tmax = tmax;
+        this.time = time;
+    }
+
+    /**
+     * 方向不归一化的射线：变换到局部坐标系的射线保留变换后的方向长度，
+     * 这样局部坐标系中的t和世界坐标系中的t相同（缩放变换也一样）。
+     * 形状的求交不能假设这种射线的方向是单位向量。
+     */
+    static Ray unnormalisiert(Vec3 x, Vec3 d, double tmin, double tmax, double time) {
+        return new Ray(x, d, tmin, tmax, time, false);
+    }
+
+    // 同一条射线，换一个快门时间（方向原样保留）
+    public Ray withTime(double time) {
+        return new Ray(x, d, tmin, tmax, time, false);
     }
 
 
@@ -25,7 +50,7 @@ public class Ray {
         Vec3 newOrigin = transformPoint(mat, this.x);    // 1. 变换射线原点（点变换：齐次坐标w=1，受平移影响）
         Vec3 newDirection = transformVector(mat, this.d);     // 2. 变换射线方向（向量变换：齐次坐标w=0，不受平移影响）
         
-        return new Ray(newOrigin, newDirection, this.tmin, this.tmax);   // 3. 生成新射线（tMin/tMax不变，方向重新归一化）
+        return new Ray(newOrigin, newDirection, this.tmin, this.tmax, this.time);   // 3. 生成新射线（tMin/tMax/时间不变，方向重新归一化）
     }
 
     /**
@@ -80,6 +105,10 @@ public class Ray {
         return tmax;
     }
 
+    public double time() {
+        return time;
+    }
+
     // 修正：统一返回Vec3类型，适配外部代码中可能的origin()/direction()调用
     public Vec3 origin() {
         return x;  // 与x()保持一致，返回原点
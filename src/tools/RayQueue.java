@@ -0,0 +1,164 @@
+package tools;
+
+import java.util.Arrays;
+
+/**
+ * 射线队列，按分量分开存放在基本类型数组里（SoA），不为每条射线创建对象。
+ *
+ * <p>
+ * 每一项除了射线本身（起点、方向、t范围、快门时间）之外，还带一个颜色值
+ * （次级射线的吞吐量，或阴影射线未被遮挡时的贡献）、所属像素/射线的下标、
+ * 剩余深度，以及阴影射线对应的光源。
+ *
+ * <p>
+ * 既可以当作栈使用（add / pop，SimpleRayTracer 的迭代追踪），
+ * 也可以按下标顺序整批处理（wavefront 模式）。不是线程安全的。
+ */
+public class RayQueue {
+    private int size;
+    private double[] ox, oy, oz;     // 起点
+    private double[] dx, dy, dz;     // 方向（已归一化）
+    private double[] tMin, tMax;
+    private double[] zeit;           // 快门时间（运动模糊）
+    private double[] r, g, b;        // 吞吐量 / 贡献
+    private int[] index;             // 像素或射线下标
+    private int[] tiefe;             // 剩余深度
+    private Lichtquelle[] licht;     // 阴影射线的光源，其他射线为null
+
+    public RayQueue(int kapazitaet) {
+        kapazitaet = Math.max(4, kapazitaet);
+        ox = new double[kapazitaet];
+        oy = new double[kapazitaet];
+        oz = new double[kapazitaet];
+        dx = new double[kapazitaet];
+        dy = new double[kapazitaet];
+        dz = new double[kapazitaet];
+        tMin = new double[kapazitaet];
+        tMax = new double[kapazitaet];
+        zeit = new double[kapazitaet];
+        r = new double[kapazitaet];
+        g = new double[kapazitaet];
+        b = new double[kapazitaet];
+        index = new int[kapazitaet];
+        tiefe = new int[kapazitaet];
+        licht = new Lichtquelle[kapazitaet];
+    }
+
+    public void add(Ray ray, double r, double g, double b, int index, int tiefe, Lichtquelle licht) {
+        if (size == ox.length) {
+            wachsen();
+        }
+        int i = size++;
+        Vec3 o = ray.origin();
+        Vec3 d = ray.direction();
+        ox[i] = o.x();
+        oy[i] = o.y();
+        oz[i] = o.z();
+        dx[i] = d.x();
+        dy[i] = d.y();
+        dz[i] = d.z();
+        tMin[i] = ray.tmin();
+        tMax[i] = ray.tmax();
+        zeit[i] = ray.time();
+        this.r[i] = r;
+        this.g[i] = g;
+        this.b[i] = b;
+        this.index[i] = index;
+        this.tiefe[i] = tiefe;
+        this.licht[i] = licht;
+    }
+
+    /**
+     * 把另一个队列的所有项按顺序加到这个队列后面
+     */
+    public void addAll(RayQueue andere) {
+        while (size + andere.size > ox.length) {
+            wachsen();
+        }
+        int n = andere.size;
+        System.arraycopy(andere.ox, 0, ox, size, n);
+        System.arraycopy(andere.oy, 0, oy, size, n);
+        System.arraycopy(andere.oz, 0, oz, size, n);
+        System.arraycopy(andere.dx, 0, dx, size, n);
+        System.arraycopy(andere.dy, 0, dy, size, n);
+        System.arraycopy(andere.dz, 0, dz, size, n);
+        System.arraycopy(andere.tMin, 0, tMin, size, n);
+        System.arraycopy(andere.tMax, 0, tMax, size, n);
+        System.arraycopy(andere.zeit, 0, zeit, size, n);
+        System.arraycopy(andere.r, 0, r, size, n);
+        System.arraycopy(andere.g, 0, g, size, n);
+        System.arraycopy(andere.b, 0, b, size, n);
+        System.arraycopy(andere.index, 0, index, size, n);
+        System.arraycopy(andere.tiefe, 0, tiefe, size, n);
+        System.arraycopy(andere.licht, 0, licht, size, n);
+        size += n;
+    }
+
+    /**
+     * 栈用法：移除最后一项并返回它的下标，数据在下一次 add 之前仍然有效
+     */
+    public int pop() {
+        return --size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        // 释放光源引用，其他数组直接覆盖
+        Arrays.fill(licht, 0, size, null);
+        size = 0;
+    }
+
+    public Ray ray(int i) {
+        return new Ray(new Vec3(ox[i], oy[i], oz[i]), new Vec3(dx[i], dy[i], dz[i]), tMin[i], tMax[i], zeit[i]);
+    }
+
+    public double r(int i) {
+        return r[i];
+    }
+
+    public double g(int i) {
+        return g[i];
+    }
+
+    public double b(int i) {
+        return b[i];
+    }
+
+    public int index(int i) {
+        return index[i];
+    }
+
+    public int tiefe(int i) {
+        return tiefe[i];
+    }
+
+    public Lichtquelle licht(int i) {
+        return licht[i];
+    }
+
+    private void wachsen() {
+        int n = ox.length * 2;
+        ox = Arrays.copyOf(ox, n);
+        oy = Arrays.copyOf(oy, n);
+        oz = Arrays.copyOf(oz, n);
+        dx = Arrays.copyOf(dx, n);
+        dy = Arrays.copyOf(dy, n);
+        dz = Arrays.copyOf(dz, n);
+        tMin = Arrays.copyOf(tMin, n);
+        tMax = Arrays.copyOf(tMax, n);
+        zeit = Arrays.copyOf(zeit, n);
+        r = Arrays.copyOf(r, n);
+        g = Arrays.copyOf(g, n);
+        b = Arrays.copyOf(b, n);
+        index = Arrays.copyOf(index, n);
+        tiefe = Arrays.copyOf(tiefe, n);
+        licht = Arrays.copyOf(licht, n);
+    }
+}
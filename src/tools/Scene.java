@@ -1,10 +1,114 @@
 package tools;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
-
+/**
+ * 一个完整的场景：形状、光源、相机、背景和图像大小。
+ *
+ * <p>
+ * 可以在代码里组装，也可以用 {@link #load(Path)} 从场景文件读取（JSON 或编译好的二进制格式，见 SceneLoader），
+ * 这样改场景不需要重新编译，同一个JVM可以依次渲染很多场景。
+ * 渲染时所有形状放进一个 Bvh（第一次需要时并行构建，之后复用，直到再添加形状）。
+ */
 public class Scene {
+    private final List<Shape> shapes = new ArrayList<>();
+    private final List<Lichtquelle> lichtquellen = new ArrayList<>();
+    private SimpleCamera camera;
+    private EnvironmentSampler hintergrund = EnvironmentSampler.constant(Color.black);
+    private int width = 800;
+    private int height = 800;
+    private Bvh bvh; // 加速结构（添加形状后失效）
+
+    public static Scene load(Path datei) {
+        return SceneLoader.load(datei);
+    }
+
+    public static Scene load(String datei) {
+        return load(Path.of(datei));
+    }
+
+    public void add(Shape shape) {
+        shapes.add(shape);
+        bvh = null;
+    }
+
+    public void addAll(Collection<? extends Shape> neu) {
+        shapes.addAll(neu);
+        bvh = null;
+    }
+
+    public void addLight(Lichtquelle licht) {
+        lichtquellen.add(licht);
+    }
+
+    public void setCamera(SimpleCamera camera) {
+        this.camera = camera;
+    }
+
+    public void setBackground(EnvironmentSampler hintergrund) {
+        this.hintergrund = hintergrund;
+    }
+
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 同一个场景换一个相机（和图像大小）：形状、光源和已经构建的 Bvh 共享，不复制
+     */
+    public Scene withCamera(SimpleCamera camera, int width, int height) {
+        Scene neu = new Scene();
+        neu.shapes.addAll(shapes);
+        neu.lichtquellen.addAll(lichtquellen);
+        neu.hintergrund = hintergrund;
+        neu.camera = camera;
+        neu.width = width;
+        neu.height = height;
+        neu.bvh = accelerate();
+        return neu;
+    }
+
+    // 所有形状的 Bvh，需要时才构建（多个线程同时渲染一个场景时只构建一次）
+    public synchronized Bvh accelerate() {
+        if (bvh == null) {
+            bvh = new Bvh(shapes);
+        }
+        return bvh;
+    }
+
+    // 在这个场景上工作的光线追踪器（场景只有一个顶层形状：Bvh）
+    public SimpleRayTracer rayTracer() {
+        if (camera == null) {
+            throw new IllegalStateException("scene has no camera");
+        }
+        return new SimpleRayTracer(camera, List.of(accelerate()), hintergrund, lichtquellen);
+    }
+
+    public List<Shape> shapes() {
+        return shapes;
+    }
+
+    public List<Lichtquelle> lights() {
+        return lichtquellen;
+    }
+
+    public SimpleCamera camera() {
+        return camera;
+    }
+
+    public EnvironmentSampler background() {
+        return hintergrund;
+    }
+
+    public int width() {
+        return width;
+    }
 
-    
-    
-    
+    public int height() {
+        return height;
+    }
 }
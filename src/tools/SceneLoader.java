@@ -0,0 +1,519 @@
+package tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * 读取场景文件，构建 Scene。
+ *
+ * <p>
+ * JSON 格式（所有向量和颜色都是数组，颜色可以省略 alpha，角度用度）：
+ * <pre>
+ * {
+ *   "width": 800, "height": 800,
+ *   "camera": {"position": [0, 2, 10], "target": [0, 1, 0], "fov": 60,
+ *              "up": [0, 1, 0], "aperture": 0.1, "focus": 10},
+ *   "background": [0.1, 0.1, 0.2]  或  "stars",
+ *   "lights": [
+ *     {"type": "directional", "direction": [-5, -2, -2], "intensity": [0.7, 0.7, 0.7]},
+ *     {"type": "point", "position": [0, 15, 0], "intensity": [0.6, 0.6, 0.6]},
+ *     {"type": "rect", "center": [..], "edgeU": [..], "edgeV": [..], "intensity": [..], "samples": 16},
+ *     {"type": "disk", "center": [..], "normal": [..], "radius": 1, "intensity": [..], "samples": 16},
+ *     {"type": "sphere", "center": [..], "radius": 1, "intensity": [..], "samples": 16}
+ *   ],
+ *   "prototypes": {"schneemann": [ 形状... ]},
+ *   "shapes": [
+ *     {"type": "sphere", "center": [0, 1, 0], "radius": 1, "color": [1, 0, 0]},
+ *     {"type": "sphere", "center": [..], "radius": 1, "texture": "images/globus.png"},
+ *     {"type": "box", "min": [..], "max": [..], "color": [..]}  或  "size": [x, y, z]（以原点为中心）,
+ *     {"type": "plane", "color": [..], "radius": 5 或 "side": 5, "texture": "images/snow.jpg",
+ *      "textureScale": 0.01, "transform": [..]},
+ *     {"type": "group", "children": [..], "transform": [..], "endTransform": [..]},
+ *     {"type": "instance", "prototype": "schneemann", "transform": [..], "endTransform": [..]}
+ *   ]
+ * }
+ * </pre>
+ * 变换是操作的列表，从左到右相乘（和代码里 translate(..).multiply(rotateY(..)) 的顺序一样）：
+ * {@code [{"translate": [x, y, z]}, {"rotateY": 30}, {"scale": [x, y, z]}]}，scale 也可以是一个数。
+ * 形状可以带 "material"：{"type": "lambert", "albedo": [..]}、mirror (f0)、glass (ior, tint)、
+ * emissive (radiance)、ggx (f0, roughness)。
+ *
+ * <p>
+ * 每个原型只构建一次（自己的 Bvh），实例只引用它。原型里不能有实例（不能引用其他原型），
+ * 否则抛出 IllegalArgumentException，和原型的顺序无关。顶层形状并行构建，
+ * 最后整个场景的 Bvh 也并行构建。纹理用 ImageTexture.shared 加载，同一个文件只读一次（文件改变后重新读取）。
+ *
+ * <p>
+ * 二进制格式（{@link #compile}）保存的是同一棵JSON树，但不需要解析文本：
+ * 对象的键放在开头的字符串表里，只按下标引用；全是数字的数组按 double 块存储，
+ * 读取时整块转换，不经过单个数字对象。读取后和JSON走同一条构建路径，两种格式得到的场景完全相同。
+ */
+public final class SceneLoader {
+    private static final int MAGIC = 0x43474753; // "CGGS"
+    private static final int VERSION = 1;
+
+    // 二进制格式中值的类型
+    private static final byte NULL = 0;
+    private static final byte FALSCH = 1;
+    private static final byte WAHR = 2;
+    private static final byte ZAHL = 3;
+    private static final byte TEXT = 4;
+    private static final byte LISTE = 5;
+    private static final byte ZAHLEN = 6;
+    private static final byte OBJEKT = 7;
+
+    private SceneLoader() {}
+
+    /**
+     * 读取场景文件，按文件开头判断是二进制还是JSON
+     */
+    public static Scene load(Path datei) {
+        return build(read(datei));
+    }
+
+    /**
+     * 把JSON场景文件转换成二进制格式
+     */
+    public static void compile(Path json, Path ziel) {
+        JSONObject wurzel = read(json);
+        List<String> schluessel = new ArrayList<>();
+        sammeln(wurzel, new HashMap<>(), schluessel);
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < schluessel.size(); i++) {
+            index.put(schluessel.get(i), i);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(ziel)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(schluessel.size());
+            for (String s : schluessel) {
+                out.writeUTF(s);
+            }
+            schreiben(out, wurzel, index);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write scene " + ziel, e);
+        }
+    }
+
+    /**
+     * 从内存中的文件内容读取场景（例如网络上收到的），格式和文件一样
+     */
+    public static Scene load(byte[] inhalt) {
+        try {
+            return build(read(new ByteArrayInputStream(inhalt)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read scene", e);
+        }
+    }
+
+    /**
+     * 只读图像大小 {width, height}，不构建场景（例如只需要划分图块的协调进程）
+     */
+    public static int[] size(byte[] inhalt) {
+        try {
+            JSONObject wurzel = read(new ByteArrayInputStream(inhalt));
+            return new int[] {wurzel.optInt("width", 800), wurzel.optInt("height", 800)};
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read scene", e);
+        }
+    }
+
+    /**
+     * 单独读取一个相机（和场景文件里 "camera" 的格式一样）
+     */
+    public static SimpleCamera camera(String json, int width, int height) {
+        return kamera(new JSONObject(json), width, height);
+    }
+
+    private static JSONObject read(Path datei) {
+        try (InputStream in = Files.newInputStream(datei)) {
+            return read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read scene " + datei, e);
+        }
+    }
+
+    private static JSONObject read(InputStream roh) throws IOException {
+        InputStream in = new BufferedInputStream(roh);
+        in.mark(4);
+        byte[] kopf = in.readNBytes(4);
+        in.reset();
+        if (kopf.length == 4 && ByteBuffer.wrap(kopf).getInt() == MAGIC) {
+            return binaerLesen(new DataInputStream(in));
+        }
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        return new JSONObject(new JSONTokener(reader));
+    }
+
+    // ========== 构建 ==========
+
+    private static Scene build(JSONObject wurzel) {
+        Scene scene = new Scene();
+        int width = wurzel.optInt("width", 800);
+        int height = wurzel.optInt("height", 800);
+        scene.setSize(width, height);
+        scene.setCamera(kamera(wurzel.getJSONObject("camera"), width, height));
+        scene.setBackground(hintergrund(wurzel.opt("background")));
+
+        JSONArray lichter = wurzel.optJSONArray("lights");
+        if (lichter != null) {
+            for (int i = 0; i < lichter.length(); i++) {
+                scene.addLight(licht(lichter.getJSONObject(i)));
+            }
+        }
+
+        // 原型：每个只构建一次
+        Map<String, Shape> prototypen = new HashMap<>();
+        JSONObject p = wurzel.optJSONObject("prototypes");
+        if (p != null) {
+            for (String name : p.keySet()) {
+                prototypen.put(name, new Bvh(formen(p.getJSONArray(name), null)));
+            }
+        }
+
+        JSONArray shapes = wurzel.optJSONArray("shapes");
+        if (shapes != null) {
+            scene.addAll(formen(shapes, prototypen));
+        }
+        scene.accelerate();
+        return scene;
+    }
+
+    // 一组形状并行构建，顺序保持不变；prototypen 为 null 表示在原型里面（不允许实例）
+    private static List<Shape> formen(JSONArray liste, Map<String, Shape> prototypen) {
+        return IntStream.range(0, liste.length()).parallel()
+                        .mapToObj(i -> form(liste.getJSONObject(i), prototypen))
+                        .toList();
+    }
+
+    private static Shape form(JSONObject o, Map<String, Shape> prototypen) {
+        String typ = o.getString("type");
+        switch (typ) {
+            case "sphere": {
+                Vec3 mitte = vektor(o, "center");
+                double radius = o.getDouble("radius");
+                if (o.has("texture")) {
+                    return new Sphere(mitte, radius, ImageTexture.shared(o.getString("texture")), material(o));
+                }
+                return new Sphere(mitte, radius, farbe(o, "color", Color.white), material(o));
+            }
+            case "box": {
+                Box box;
+                if (o.has("size")) {
+                    Vec3 g = vektor(o, "size");
+                    box = new Box(g.x(), g.y(), g.z(), farbe(o, "color", Color.white));
+                } else {
+                    box = new Box(vektor(o, "min"), vektor(o, "max"), farbe(o, "color", Color.white));
+                }
+                box.setMaterial(material(o));
+                return box;
+            }
+            case "plane": {
+                Ebene ebene;
+                Color farbe = farbe(o, "color", Color.white);
+                if (o.has("texture")) {
+                    ebene = new Ebene(ImageTexture.shared(o.getString("texture")));
+                    if (o.has("textureScale")) ebene.setTextureScale(o.getDouble("textureScale"));
+                } else if (o.has("radius")) {
+                    ebene = new Ebene(o.getDouble("radius"), farbe);
+                } else if (o.has("side")) {
+                    ebene = new Ebene(o.getDouble("side"), true, farbe);
+                } else {
+                    ebene = new Ebene(farbe);
+                }
+                if (o.has("transform")) ebene.setTransform(transform(o.get("transform")));
+                ebene.setMaterial(material(o));
+                return ebene;
+            }
+            case "group": {
+                Group gruppe = new Group();
+                for (Shape kind : formen(o.getJSONArray("children"), prototypen)) {
+                    gruppe.addChild(kind);
+                }
+                if (o.has("endTransform")) {
+                    gruppe.setTransform(transform(o.opt("transform")), transform(o.get("endTransform")));
+                } else if (o.has("transform")) {
+                    gruppe.setTransform(transform(o.get("transform")));
+                }
+                return gruppe;
+            }
+            case "instance": {
+                String name = o.getString("prototype");
+                if (prototypen == null) {
+                    throw new IllegalArgumentException("instance of " + name + " inside a prototype: "
+                                                       + "prototypes cannot reference other prototypes");
+                }
+                Shape prototyp = prototypen.get(name);
+                if (prototyp == null) {
+                    throw new IllegalArgumentException("unknown prototype: " + name);
+                }
+                Mat44 start = transform(o.opt("transform"));
+                return o.has("endTransform")
+                       ? new Instance(prototyp, start, transform(o.get("endTransform")))
+                       : new Instance(prototyp, start);
+            }
+            default:
+                throw new IllegalArgumentException("unknown shape type: " + typ);
+        }
+    }
+
+    private static Material material(JSONObject form) {
+        JSONObject o = form.optJSONObject("material");
+        if (o == null) return null;
+        String typ = o.getString("type");
+        switch (typ) {
+            case "lambert":
+                return o.has("texture")
+                       ? new LambertMaterial(ImageTexture.shared(o.getString("texture")))
+                       : new LambertMaterial(farbe(o, "albedo", Color.white));
+            case "mirror":
+                return new MirrorMaterial(farbe(o, "f0", Color.white));
+            case "glass":
+                return new DielectricMaterial(o.optDouble("ior", 1.5), farbe(o, "tint", Color.white));
+            case "emissive":
+                return new EmissiveMaterial(farbe(o, "radiance", Color.white));
+            case "ggx":
+                return new GgxMaterial(farbe(o, "f0", Color.white), o.optDouble("roughness", 0.5));
+            default:
+                throw new IllegalArgumentException("unknown material type: " + typ);
+        }
+    }
+
+    private static SimpleCamera kamera(JSONObject o, int width, int height) {
+        Vec3 position = vektor(o, "position");
+        Vec3 ziel = vektor(o, "target");
+        Vec3 oben = o.has("up") ? vektor(o, "up") : new Vec3(0, 1, 0);
+        double alpha = Math.toRadians(o.optDouble("fov", 60));
+        double blende = o.optDouble("aperture", 0);
+        return o.has("focus")
+               ? new ThinLensCamera(alpha, width, height, position, ziel, oben, blende, o.getDouble("focus"))
+               : new ThinLensCamera(alpha, width, height, position, ziel, oben, blende);
+    }
+
+    private static EnvironmentSampler hintergrund(Object wert) {
+        if (wert == null || wert == JSONObject.NULL) {
+            return EnvironmentSampler.constant(Color.black);
+        }
+        if ("stars".equals(wert)) {
+            return EnvironmentMap.bake(new StarrySky(), 2048, 1024);
+        }
+        return EnvironmentSampler.constant(farbe(zahlen(wert)));
+    }
+
+    private static Lichtquelle licht(JSONObject o) {
+        String typ = o.getString("type");
+        Color intensitaet = farbe(o, "intensity", Color.white);
+        int samples = o.optInt("samples", 16);
+        switch (typ) {
+            case "directional":
+                return Lichtquelle.createRichtungslicht(vektor(o, "direction"), intensitaet);
+            case "point":
+                return Lichtquelle.createPunktlicht(vektor(o, "position"), intensitaet);
+            case "rect":
+                return Lichtquelle.createRechtecklicht(vektor(o, "center"), vektor(o, "edgeU"), vektor(o, "edgeV"),
+                                                       intensitaet, samples);
+            case "disk":
+                return Lichtquelle.createScheibenlicht(vektor(o, "center"), vektor(o, "normal"),
+                                                       o.getDouble("radius"), intensitaet, samples);
+            case "sphere":
+                return Lichtquelle.createKugellicht(vektor(o, "center"), o.getDouble("radius"), intensitaet, samples);
+            default:
+                throw new IllegalArgumentException("unknown light type: " + typ);
+        }
+    }
+
+    // 操作列表从左到右相乘；没有变换时为单位矩阵
+    private static Mat44 transform(Object wert) {
+        Mat44 m = Mat44.identity;
+        if (wert == null || wert == JSONObject.NULL) return m;
+        JSONArray ops = (JSONArray) wert;
+        for (int i = 0; i < ops.length(); i++) {
+            JSONObject op = ops.getJSONObject(i);
+            for (String name : op.keySet()) {
+                m = m.multiply(operation(name, op.get(name)));
+            }
+        }
+        return m;
+    }
+
+    private static Mat44 operation(String name, Object wert) {
+        switch (name) {
+            case "translate": {
+                double[] v = zahlen(wert);
+                return Mat44.translate(v[0], v[1], v[2]);
+            }
+            case "scale": {
+                if (wert instanceof Number s) {
+                    return Mat44.scale(s.doubleValue(), s.doubleValue(), s.doubleValue());
+                }
+                double[] v = zahlen(wert);
+                return Mat44.scale(v[0], v[1], v[2]);
+            }
+            case "rotateX":
+                return Mat44.rotateX(Math.toRadians(((Number) wert).doubleValue()));
+            case "rotateY":
+                return Mat44.rotateY(Math.toRadians(((Number) wert).doubleValue()));
+            case "rotateZ":
+                return Mat44.rotateZ(Math.toRadians(((Number) wert).doubleValue()));
+            default:
+                throw new IllegalArgumentException("unknown transform: " + name);
+        }
+    }
+
+    private static Vec3 vektor(JSONObject o, String name) {
+        double[] v = zahlen(o.get(name));
+        return new Vec3(v[0], v[1], v[2]);
+    }
+
+    private static Color farbe(JSONObject o, String name, Color standard) {
+        return o.has(name) ? farbe(zahlen(o.get(name))) : standard;
+    }
+
+    private static Color farbe(double[] v) {
+        return new Color(v[0], v[1], v[2], v.length > 3 ? v[3] : 1);
+    }
+
+    // 数字数组：JSON读进来的是JSONArray，二进制格式读进来的已经是 double[]
+    private static double[] zahlen(Object wert) {
+        if (wert instanceof double[] d) return d;
+        JSONArray a = (JSONArray) wert;
+        double[] d = new double[a.length()];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = a.getDouble(i);
+        }
+        return d;
+    }
+
+    // ========== 二进制格式 ==========
+
+    private static void sammeln(Object wert, Map<String, Integer> bekannt, List<String> schluessel) {
+        if (wert instanceof JSONObject o) {
+            for (String k : o.keySet()) {
+                if (bekannt.putIfAbsent(k, schluessel.size()) == null) {
+                    schluessel.add(k);
+                }
+                sammeln(o.get(k), bekannt, schluessel);
+            }
+        } else if (wert instanceof JSONArray a) {
+            for (int i = 0; i < a.length(); i++) {
+                sammeln(a.get(i), bekannt, schluessel);
+            }
+        }
+    }
+
+    private static void schreiben(DataOutputStream out, Object wert, Map<String, Integer> index) throws IOException {
+        if (wert == null || wert == JSONObject.NULL) {
+            out.writeByte(NULL);
+        } else if (wert instanceof Boolean b) {
+            out.writeByte(b ? WAHR : FALSCH);
+        } else if (wert instanceof Number n) {
+            out.writeByte(ZAHL);
+            out.writeDouble(n.doubleValue());
+        } else if (wert instanceof String s) {
+            out.writeByte(TEXT);
+            out.writeUTF(s);
+        } else if (wert instanceof JSONObject o) {
+            out.writeByte(OBJEKT);
+            out.writeInt(o.length());
+            for (String k : o.keySet()) {
+                out.writeInt(index.get(k));
+                schreiben(out, o.get(k), index);
+            }
+        } else if (wert instanceof JSONArray a) {
+            boolean nurZahlen = true;
+            for (int i = 0; i < a.length() && nurZahlen; i++) {
+                nurZahlen = a.get(i) instanceof Number;
+            }
+            if (nurZahlen && a.length() > 0) {
+                out.writeByte(ZAHLEN);
+                out.writeInt(a.length());
+                for (int i = 0; i < a.length(); i++) {
+                    out.writeDouble(a.getDouble(i));
+                }
+            } else {
+                out.writeByte(LISTE);
+                out.writeInt(a.length());
+                for (int i = 0; i < a.length(); i++) {
+                    schreiben(out, a.get(i), index);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported value: " + wert.getClass());
+        }
+    }
+
+    private static JSONObject binaerLesen(DataInputStream in) throws IOException {
+        in.readInt(); // MAGIC
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported scene version " + version);
+        }
+        String[] schluessel = new String[in.readInt()];
+        for (int i = 0; i < schluessel.length; i++) {
+            schluessel[i] = in.readUTF();
+        }
+        return (JSONObject) lesen(in, schluessel);
+    }
+
+    private static Object lesen(DataInputStream in, String[] schluessel) throws IOException {
+        byte typ = in.readByte();
+        switch (typ) {
+            case NULL:
+                return JSONObject.NULL;
+            case FALSCH:
+                return Boolean.FALSE;
+            case WAHR:
+                return Boolean.TRUE;
+            case ZAHL:
+                return in.readDouble();
+            case TEXT:
+                return in.readUTF();
+            case ZAHLEN: {
+                double[] d = new double[in.readInt()];
+                byte[] roh = new byte[8 * d.length];
+                in.readFully(roh);
+                ByteBuffer.wrap(roh).asDoubleBuffer().get(d);
+                return d;
+            }
+            case LISTE: {
+                int n = in.readInt();
+                JSONArray a = new JSONArray();
+                for (int i = 0; i < n; i++) {
+                    a.put(lesen(in, schluessel));
+                }
+                return a;
+            }
+            case OBJEKT: {
+                int n = in.readInt();
+                JSONObject o = new JSONObject();
+                for (int i = 0; i < n; i++) {
+                    String k = schluessel[in.readInt()];
+                    o.put(k, lesen(in, schluessel));
+                }
+                return o;
+            }
+            default:
+                throw new IllegalArgumentException("corrupt scene file (type " + typ + ")");
+        }
+    }
+}
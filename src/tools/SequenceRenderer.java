@@ -0,0 +1,174 @@
+package tools;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleFunction;
+
+/**
+ * 渲染动画序列：每一帧由场景函数根据时间构建一个 SimpleRayTracer，
+ * 所有帧的图块都交给同一个线程池。
+ *
+ * <p>
+ * 同时最多有 framesInFlight 帧在渲染：一帧的最后几个图块还在计算时，
+ * 下一帧的图块已经在排队，帧与帧之间核心不会空闲（帧级 + 图块级并行）。
+ * 下一帧的场景在主线程上构建，和正在进行的渲染重叠。
+ * 完成的帧放进一个有界队列，由单独的写线程编码成 PNG，磁盘读写也和渲染重叠；
+ * 写线程跟不上时队列满了，渲染线程会等待，内存不会无限增长。
+ *
+ * <p>
+ * 场景函数每帧都会被调用，不变的数据（纹理、烘焙好的环境贴图、网格）
+ * 应该在函数外创建一次，在所有帧之间共享，例如用 ImageTexture.shared 加载纹理。
+ */
+public class SequenceRenderer {
+    // 写队列的结束标记
+    private static final Bild ENDE = new Bild(null, null);
+
+    private record Bild(String name, double[] pixels) {}
+
+    private final int width;
+    private final int height;
+    private final DoubleFunction<SimpleRayTracer> szene;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int framesInFlight = 2;
+    private int schreibPuffer = 4;
+    private int kachelHoehe = 16;
+
+    /**
+     * @param szene 根据时间（秒）构建这一帧的场景和相机
+     */
+    public SequenceRenderer(int width, int height, DoubleFunction<SimpleRayTracer> szene) {
+        this.width = width;
+        this.height = height;
+        this.szene = szene;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // 同时渲染的最大帧数（每帧占用一个像素缓冲区）
+    public void setFramesInFlight(int frames) {
+        this.framesInFlight = Math.max(1, frames);
+    }
+
+    // 写队列中最多等待的帧数
+    public void setWriteQueueSize(int size) {
+        this.schreibPuffer = Math.max(1, size);
+    }
+
+    // 每个图块的行数
+    public void setTileHeight(int zeilen) {
+        this.kachelHoehe = Math.max(1, zeilen);
+    }
+
+    /**
+     * 渲染 frames 帧，第 i 帧的时间为 i / fps，写成 images/basename-0000.png 等文件。
+     */
+    public void render(String basename, int frames, double fps) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        BlockingQueue<Bild> ausgabe = new ArrayBlockingQueue<>(schreibPuffer);
+        Semaphore imFlug = new Semaphore(framesInFlight);
+        AtomicReference<Throwable> fehler = new AtomicReference<>();
+
+        Thread schreiber = new Thread(() -> schreiben(ausgabe, fehler), "png-writer");
+        schreiber.setDaemon(true);
+        schreiber.start();
+
+        try {
+            for (int f = 0; f < frames && fehler.get() == null; f++) {
+                imFlug.acquire();
+                if (fehler.get() != null) {
+                    imFlug.release();
+                    break;
+                }
+
+                String name = String.format("%s-%04d", basename, f);
+                SimpleRayTracer tracer = szene.apply(f / fps);
+                double[] pixels = new double[width * height * 3];
+                int kacheln = (height + kachelHoehe - 1) / kachelHoehe;
+                AtomicInteger offen = new AtomicInteger(kacheln);
+
+                for (int k = 0; k < kacheln; k++) {
+                    int von = k * kachelHoehe;
+                    int bis = Math.min(height, von + kachelHoehe);
+                    pool.execute(() -> {
+                        try {
+                            if (fehler.get() == null) {
+                                zeilen(tracer, pixels, von, bis);
+                            }
+                        } catch (Throwable e) {
+                            fehler.compareAndSet(null, e);
+                        }
+                        // 最后一个完成的图块把整帧交给写线程
+                        if (offen.decrementAndGet() == 0) {
+                            try {
+                                if (fehler.get() == null) {
+                                    ausgabe.put(new Bild(name, pixels));
+                                }
+                            } catch (InterruptedException e) {
+                                fehler.compareAndSet(null, e);
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                imFlug.release();
+                            }
+                        }
+                    });
+                }
+            }
+            // 等待所有帧完成
+            imFlug.acquire(framesInFlight);
+            ausgabe.put(ENDE);
+            schreiber.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("sequence rendering interrupted", e);
+        } finally {
+            pool.shutdown();
+            schreiber.interrupt(); // 正常结束时写线程已经退出，这里没有影响
+        }
+
+        if (fehler.get() != null) {
+            throw new RuntimeException("sequence rendering failed", fehler.get());
+        }
+    }
+
+    private void zeilen(SimpleRayTracer tracer, double[] pixels, int von, int bis) {
+        for (int y = von; y < bis; y++) {
+            for (int x = 0; x < width; x++) {
+                Color c = tracer.getColor(x, y);
+                int i = (y * width + x) * 3;
+                pixels[i] = c.r();
+                pixels[i + 1] = c.g();
+                pixels[i + 2] = c.b();
+            }
+        }
+    }
+
+    // 写线程：按完成的顺序写出PNG，直到收到结束标记。
+    // 出错后继续清空队列，渲染线程不会因为队列满了而一直等待
+    private void schreiben(BlockingQueue<Bild> ausgabe, AtomicReference<Throwable> fehler) {
+        while (true) {
+            Bild bild;
+            try {
+                bild = ausgabe.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (bild == ENDE) return;
+            try {
+                if (fehler.get() == null) {
+                    ImageWriter.writePng(bild.name(), bild.pixels(), width, height);
+                }
+            } catch (Throwable e) {
+                fehler.compareAndSet(null, e);
+            }
+        }
+    }
+}
@@ -8,4 +8,14 @@ public interface Shape {
 
    
         Color getColor();
+
+    // 物理材质（PathTracer使用），null表示按getColor()当作漫反射处理
+    default Material getMaterial() {
+        return null;
+    }
+
+    // 父坐标系中的包围盒，默认为无限大（保守估计，例如无限平面）
+    default BoundingBox bounds() {
+        return BoundingBox.everything;
+    }
 }
\ No newline at end of file
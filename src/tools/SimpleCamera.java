@@ -57,6 +57,16 @@ public class SimpleCamera {
         return new Ray(position, dir, 0.001, Double.POSITIVE_INFINITY);
     }
 
+    /**
+     * 带镜头样本和快门时间的射线。针孔相机没有光圈，忽略 lens。
+     *
+     * @param lens [0,1)² 中的镜头样本（ThinLensCamera 映射到光圈圆盘上）
+     * @param time 快门时间 [0,1)
+     */
+    public Ray generateRay(Vec2 pixel, Vec2 lens, double time) {
+        return generateRay(pixel).withTime(time);
+    }
+
     // 获取相机位置（供SimpleRayTracer使用）
     public Vec3 position() {
         return position;
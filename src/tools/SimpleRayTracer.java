@@ -1,6 +1,10 @@
 package tools;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 
 import static tools.Functions.reflect;
@@ -8,9 +12,38 @@ import static tools.Functions.reflect;
 public class SimpleRayTracer {
     private final SimpleCamera camera;
     private final List<Shape> scene;
-    private final Color backgroundColor;
+    private final EnvironmentSampler hintergrund; // 未击中物体时的背景
     private final List<Lichtquelle> lichtquelle;
 
+    // 递归由吞吐量阈值控制，MAX_TIEFE只是防止死循环的安全上限
+    static final int MAX_TIEFE = 64;
+    private double minGewicht = 1e-3;
+
+    // 迭代追踪用的射线栈（每个线程一个），代替递归调用
+    private final ThreadLocal<RayQueue> stapel = ThreadLocal.withInitial(() -> new RayQueue(16));
+    private boolean wavefront = false;
+    private WavefrontRenderer wavefrontRenderer;
+
+    // 多光源模式（lightSamples > 0 时启用）
+    private int lightSamples = 0;
+    private LightTree lightTree;
+    private List<Lichtquelle> andereLichter; // 不在光源树里的光源（方向光）
+
+    // 面光源软阴影：只在半影区域取完整样本数
+    private boolean adaptiveSoftShadows = true;
+
+    // 阴影缓存：每个线程、每个光源上一次找到的遮挡物（场景顶层的Shape，顶层 BVH 中则是它的叶子）
+    private final ThreadLocal<Map<Lichtquelle, Shape>> letzterBlocker =
+        ThreadLocal.withInitial(IdentityHashMap::new);
+    private final LongAdder schattenAnfragen = new LongAdder();
+    private final LongAdder cacheTreffer = new LongAdder();
+
+    // 面光源抖动和光源树抽样的随机流：由种子、像素和交点确定，与线程数和执行顺序无关
+    private long seed = 0x5EEDL;
+
+    // IncrementalRenderer 记录每个像素用到的射线、着色点和形状（未记录时为null）
+    private final ThreadLocal<IncrementalRenderer.Protokoll> protokoll = new ThreadLocal<>();
+
 
     // 构造方法：初始化场景组件
     public SimpleRayTracer(
@@ -18,62 +51,310 @@ public class SimpleRayTracer {
         List<Shape> scene, 
         Color backgroundColor,        
         List<Lichtquelle> lichtquelle
+    ) {
+        this(camera, scene, EnvironmentSampler.constant(backgroundColor), lichtquelle);
+    }
+
+    // 构造方法：使用背景采样器（例如烘焙好的星空 EnvironmentMap）
+    public SimpleRayTracer(
+        SimpleCamera camera,
+        List<Shape> scene,
+        EnvironmentSampler hintergrund,
+        List<Lichtquelle> lichtquelle
     ) {
         this.camera = camera;
         this.scene = scene;
-        this.backgroundColor = backgroundColor;
+        this.hintergrund = hintergrund;
         this.lichtquelle = lichtquelle;
-    }             
+    }
+
+
+    /**
+     * 启用多光源模式：点光源建成光源层次树，每个着色点只按估计贡献
+     * 随机抽取 samples 个点光源（无偏估计）。samples <= 0 时恢复逐个遍历所有光源。
+     */
+    public void setLightSamples(int samples) {
+        this.lightSamples = samples;
+        if (samples <= 0 || lichtquelle == null) {
+            this.lightTree = null;
+            this.andereLichter = null;
+            return;
+        }
+        this.lightTree = new LightTree(lichtquelle);
+        this.andereLichter = new ArrayList<>();
+        for (Lichtquelle licht : lichtquelle) {
+            if (licht != null && !lightTree.contains(licht)) {
+                andereLichter.add(licht);
+            }
+        }
+        if (lightTree.isEmpty()) {
+            this.lightTree = null; // 没有点光源，退回普通模式
+        }
+    }
+
+    /**
+     * 面光源自适应采样开关：开启时先取4个探测样本，只有在半影区域
+     * 才取光源的全部样本预算（getSamples()）。
+     */
+    public void setAdaptiveSoftShadows(boolean adaptive) {
+        this.adaptiveSoftShadows = adaptive;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * 一条主射线的追踪结果：最终颜色 + 最近交点（未击中时为null）
+     */
+    public record TraceResult(Color color, Hit hit) {
+        public boolean isMiss() {
+            return hit == null;
+        }
+    }
 
 
     public Color getColor(int x, int y) {
+        return getResult(x, y).color();
+    }
+
+    // 每条主射线只追踪一次，同时返回击中/未击中信息（未击中时颜色已来自背景采样器）
+    public TraceResult getResult(int x, int y) {
         // 1. 生成从相机到像素的射线
-        Ray ray = camera.generateRay(new Vec2(x, y));
-        return trace(ray, 5);
+        return traceResult(primaerStrahl(x, y), MAX_TIEFE, pixel(x, y));
+    }
+
+    // 像素的编号（随机流的第一个下标），不属于任何像素的射线为 -1
+    static long pixel(int x, int y) {
+        return (long) y << 32 | (x & 0xFFFFFFFFL);
     }
-    
+
+    /**
+     * 一个着色点的随机流。下标是像素和交点的 t：同一个交点无论在哪个线程、
+     * 以什么顺序着色（逐像素或 wavefront）都得到相同的样本。
+     */
+    Random zufall(long pixel, Hit hit) {
+        return Random.stream(seed, pixel, Double.doubleToLongBits(hit.t()));
+    }
+
+    // 从相机到像素的射线
+    Ray primaerStrahl(int x, int y) {
+        return camera.generateRay(new Vec2(x, y));
+    }
+
+    // 未击中物体的射线的颜色
+    Color hintergrund(Vec3 richtung) {
+        return hintergrund.sample(richtung);
+    }
+
+    double minGewicht() {
+        return minGewicht;
+    }
+
     public Color trace(Ray ray, int depth) {
-        if (depth <= 0) {
-            return backgroundColor; // 达到递归深度，返回背景色
+        return traceResult(ray, depth).color();
+    }
+
+    /**
+     * 设置次级射线的终止阈值：一条次级射线（反射、折射、透明）对像素颜色的最大贡献
+     * 低于这个值时不再追踪。
+     */
+    public void setMinContribution(double minGewicht) {
+        this.minGewicht = minGewicht;
+    }
+
+    /**
+     * wavefront 模式开关：开启时 traceTile 把整个图块的射线分阶段整批处理，
+     * 关闭时逐个像素调用 getResult。
+     */
+    public void setWavefront(boolean wavefront) {
+        this.wavefront = wavefront;
+    }
+
+    /**
+     * 追踪一条射线和它产生的所有次级射线（反射、折射、透明）。
+     *
+     * <p>
+     * 不使用递归：待追踪的次级射线连同吞吐量（对像素颜色的最大贡献，按RGB分量）
+     * 放在显式的栈里，每个交点的局部颜色乘以吞吐量直接累加到结果上。
+     * 吞吐量低于 minGewicht 的射线不再追踪，depth 只作为安全上限。
+     */
+    public TraceResult traceResult(Ray ray, int depth) {
+        return traceResult(ray, depth, -1);
+    }
+
+    private TraceResult traceResult(Ray ray, int depth, long pixel) {
+        IncrementalRenderer.Protokoll aufnahme = protokoll.get();
+        RayQueue stapel = this.stapel.get();
+        stapel.clear();
+        stapel.add(ray, 1, 1, 1, 0, depth, null);
+
+        double r = 0, g = 0, b = 0;
+        Hit ersterHit = null;
+        boolean primaer = true;
+
+        while (!stapel.isEmpty()) {
+            // pop 之后这一项会被新加入的射线覆盖，先把数据读出来
+            int i = stapel.pop();
+            double tr = stapel.r(i), tg = stapel.g(i), tb = stapel.b(i);
+            int tiefe = stapel.tiefe(i);
+            Ray strahl = stapel.ray(i);
+
+            Hit hit = null;
+            if (tiefe > 0 && Math.max(tr, Math.max(tg, tb)) >= minGewicht) {
+                hit = findClosestHit(strahl); // 查找最近交点
+                if (aufnahme != null) {
+                    aufnahme.strahl(strahl, hit == null ? Double.POSITIVE_INFINITY
+                                                        : hit.position().subtract(strahl.origin()).length());
+                    if (hit != null) aufnahme.objekt(hit.shape());
+                }
+            }
+            if (primaer) {
+                ersterHit = hit;
+                primaer = false;
+            }
+
+            if (hit == null) {
+                // 无交点或达到终止条件：背景色
+                Color c = hintergrund.sample(strahl.direction());
+                r += tr * c.r();
+                g += tg * c.g();
+                b += tb * c.b();
+                continue;
+            }
+
+            double alpha = sekundaer(strahl, hit, tr, tg, tb, tiefe, 0, stapel);
+            if (alpha > 0) {
+                if (aufnahme != null) aufnahme.punkt(hit.position());
+                // 计算当前表面的光照颜色，按透明度混合
+                Color lokal = shade(hit, strahl.time(), null, -1, zufall(pixel, hit)).clamp();
+                r += tr * alpha * lokal.r();
+                g += tg * alpha * lokal.g();
+                b += tb * alpha * lokal.b();
+            }
         }
 
-        // 查找最近交点
-        Hit closestHit = findClosestHit(ray);
+        return new TraceResult(new Color(r, g, b, 1).clamp(), ersterHit);
+    }
 
-        if (closestHit == null) {
-            return backgroundColor; // 无交点返回背景色
+    // 在当前线程中开始（protokoll 不为null）或结束记录
+    void aufzeichnen(IncrementalRenderer.Protokoll protokoll) {
+        if (protokoll == null) {
+            this.protokoll.remove();
+        } else {
+            this.protokoll.set(protokoll);
+        }
+    }
+
+    /**
+     * 追踪一个图块（从 (x0, y0) 开始 breite × hoehe 个像素）的主射线，结果按行存放。
+     * wavefront 模式下由 WavefrontRenderer 分阶段整批处理，结果和 getResult 相同。
+     */
+    public TraceResult[] traceTile(int x0, int y0, int breite, int hoehe) {
+        if (wavefront) {
+            if (wavefrontRenderer == null) {
+                wavefrontRenderer = new WavefrontRenderer(this);
+            }
+            return wavefrontRenderer.traceTile(x0, y0, breite, hoehe);
+        }
+        TraceResult[] ergebnis = new TraceResult[breite * hoehe];
+        for (int j = 0; j < hoehe; j++) {
+            for (int i = 0; i < breite; i++) {
+                ergebnis[j * breite + i] = getResult(x0 + i, y0 + j);
+            }
+        }
+        return ergebnis;
+    }
+
+    /**
+     * 交点产生的次级射线放进队列 naechste，吞吐量已乘上反射率/透射率。
+     *
+     * @return 交点处表面颜色的权重：不透明为1，半透明为 alpha，
+     *         镜子和玻璃没有自己的表面颜色，返回0
+     */
+    double sekundaer(Ray ray, Hit hit, double tr, double tg, double tb, int tiefe, int index, RayQueue naechste) {
+        // 镜面反射 / 折射材质
+        Material material = hit.shape().getMaterial();
+        if (material instanceof DielectricMaterial glas) {
+            glas(ray, hit, glas, tr, tg, tb, tiefe, index, naechste);
+            return 0;
+        }
+        if (material instanceof MirrorMaterial spiegel) {
+            spiegel(ray, hit, spiegel, tr, tg, tb, tiefe, index, naechste);
+            return 0;
         }
 
-        // 计算当前表面的光照颜色
-        Color localColor = shade(closestHit);
-        
         // 获取物体原始颜色的透明度
-        Color rawColor = getShapeColor(closestHit.shape(), closestHit.position());
-        double alpha = rawColor.a(); // 使用你新加的 alpha()
+        double alpha = getShapeColor(hit.shape(), hit.position()).a();
 
-        // 如果物体是半透明 (alpha < 1.0)，则继续追踪
+        // 如果物体是半透明 (alpha < 1.0)，则继续追踪后面的物体
         if (alpha < 1.0 - 1e-4) { // 稍微容错
             // 射线的起点稍微往前移一点点，防止打到自己
-            Vec3 offsetOrigin = closestHit.position().add(ray.direction().multiply(0.001));
-            Ray nextRay = new Ray(offsetOrigin, ray.direction(), 0, Double.POSITIVE_INFINITY);
-            
-            // 递归获取背景颜色
-            Color colorBehind = trace(nextRay, depth - 1);
-            
+            Vec3 offsetOrigin = hit.position().add(ray.direction().multiply(0.001));
+            Ray nextRay = new Ray(offsetOrigin, ray.direction(), 0, Double.POSITIVE_INFINITY, ray.time());
             // 混合公式：(表面色 * alpha) + (背景色 * (1-alpha))
-            Color blended = localColor.multiply(alpha)
-                                      .add(colorBehind.multiply(1.0 - alpha));
-            return blended.clamp();
+            double t = 1.0 - alpha;
+            naechste.add(nextRay, tr * t, tg * t, tb * t, index, tiefe - 1, null);
+            return alpha;
         }
+        return 1;
+    }
 
-        return localColor.clamp();
+    /**
+     * 玻璃：按Schlick菲涅尔系数分成反射和折射两条射线（全反射时只有反射）
+     */
+    private void glas(Ray ray, Hit hit, DielectricMaterial glas,
+                      double tr, double tg, double tb, int tiefe, int index, RayQueue naechste) {
+        Vec3 d = ray.direction();
+        Vec3 n = hit.normal().normalize();
+        boolean eintretend = n.dot(d) < 0; // 从外部射入
+        Vec3 nn = eintretend ? n : n.negate();
+        double eta = eintretend ? 1 / glas.ior() : glas.ior();
+        double cosI = -nn.dot(d);
+
+        Vec3 reflektiert = reflect(nn, d).normalize();
+        Vec3 gebrochen = DielectricMaterial.refract(d.negate(), nn, cosI, eta);
+
+        double f0 = (1 - glas.ior()) / (1 + glas.ior());
+        double fresnel = gebrochen == null ? 1
+            : Material.schlick(eintretend ? cosI : -gebrochen.dot(nn), f0 * f0);
+
+        if (Math.max(tr, Math.max(tg, tb)) * fresnel >= minGewicht) {
+            Ray r = new Ray(hit.position().add(nn.multiply(0.001)), reflektiert, 0.001, Double.POSITIVE_INFINITY, ray.time());
+            naechste.add(r, tr * fresnel, tg * fresnel, tb * fresnel, index, tiefe - 1, null);
+        }
+        if (gebrochen != null) {
+            Color tint = glas.baseColor(hit);
+            double t = 1 - fresnel;
+            double gr = tr * t * tint.r(), gg = tg * t * tint.g(), gb = tb * t * tint.b();
+            if (Math.max(gr, Math.max(gg, gb)) >= minGewicht) {
+                Ray r = new Ray(hit.position().subtract(nn.multiply(0.001)), gebrochen, 0.001, Double.POSITIVE_INFINITY, ray.time());
+                naechste.add(r, gr, gg, gb, index, tiefe - 1, null);
+            }
+        }
     }
 
+    /**
+     * 镜子：反射率随入射角变化（Schlick）
+     */
+    private void spiegel(Ray ray, Hit hit, MirrorMaterial spiegel,
+                         double tr, double tg, double tb, int tiefe, int index, RayQueue naechste) {
+        Vec3 d = ray.direction();
+        Vec3 n = hit.normal().normalize();
+        if (n.dot(d) > 0) n = n.negate(); // 朝向入射一侧
+        Color fresnel = Material.schlick(-n.dot(d), spiegel.f0());
+        double sr = tr * fresnel.r(), sg = tg * fresnel.g(), sb = tb * fresnel.b();
+        if (Math.max(sr, Math.max(sg, sb)) < minGewicht) {
+            return;
+        }
+        Ray r = new Ray(hit.position().add(n.multiply(0.001)), reflect(n, d).normalize(), 0.001, Double.POSITIVE_INFINITY, ray.time());
+        naechste.add(r, sr, sg, sb, index, tiefe - 1, null);
+    }
 
     /**
      * 查找射线与场景中所有形状的最近交点
      */
-    private Hit findClosestHit(Ray ray) {
+    Hit findClosestHit(Ray ray) {
         Hit closestHit = null;
         double minT = Double.POSITIVE_INFINITY;
 
@@ -107,6 +388,9 @@ public class SimpleRayTracer {
         else if (shape instanceof Ebene) {
             return ((Ebene) shape).getColorAt(hitPosition);
         }
+        else if (shape instanceof Box) {
+            return shape.getColor();
+        }
         // Group默认灰色
         else if (shape instanceof Group) {
             // Group 本身通常没有颜色，Hit 返回的是子物体
@@ -121,86 +405,142 @@ public class SimpleRayTracer {
 
 
     /**
-     * 光照计算：环境光 + 漫反射 + 镜面反射 + 阴影
+     * 交点处物体的颜色（纹理或纯色），PathTracer也用它作为默认漫反射颜色
      */
-    private Color shade(Hit hit) {
-        Vec3 p = hit.position();       // 交点坐标
-        Vec3 n = hit.normal().normalize();  // 法向量归一
-        
+    static Color objektFarbe(Hit hit) {
         // 直接使用Hit中的UV坐标
-        Color objColor;
         if (hit.shape() instanceof Sphere && hit.uv() != null) {
-            objColor = ((Sphere) hit.shape()).getColorAt(hit.uv());
+            return ((Sphere) hit.shape()).getColorAt(hit.uv());
         } else if (hit.shape() instanceof Ebene) {
-            objColor = ((Ebene) hit.shape()).getColorAt(p);
+            return ((Ebene) hit.shape()).getColorAt(hit.position());
         } else {
-            objColor = hit.shape().getColor();
+            return hit.shape().getColor();
         }
+    }
+
+    /**
+     * 光照计算：环境光 + 漫反射 + 镜面反射 + 阴影
+     *
+     * @param schatten 不为null时（wavefront模式）点光源和方向光的阴影射线不立即测试，
+     *                 而是连同未被遮挡时的贡献放进这个队列（下标为 index），返回值中不包含它们
+     * @param random   面光源抖动和光源树抽样用的随机流（见 zufall）
+     */
+    Color shade(Hit hit, double zeit, RayQueue schatten, int index, Random random) {
+        Vec3 p = hit.position();       // 交点坐标
+        Vec3 n = hit.normal().normalize();  // 法向量归一
+        
+        Color objColor = objektFarbe(hit);
 
         // 环境光
         float ambientStrength = 0.1f;
         Color ambient = objColor.multiply(ambientStrength);
 
-        // 漫反射 + 镜面反射
-        Color diffuseTotal = Color.black();
-        Color specularTotal = Color.black();
-
         // 如果没有光源，只返回环境光
         if (lichtquelle == null || lichtquelle.isEmpty()) {
             return ambient;
         }
 
-        // 遍历所有光源
-        for (Lichtquelle licht : lichtquelle) {
-            if (licht == null) continue;
+        // 漫反射 + 镜面反射
+        Color direkt = Color.black();
 
-            // 检测阴影：被遮挡则跳过该光源
-            if (isInShadow(p, n, licht)) {
-                continue;
+        if (lightTree == null) {
+            // 遍历所有光源
+            for (Lichtquelle licht : lichtquelle) {
+                if (licht == null) continue;
+                direkt = direkt.add(beleuchtung(p, n, objColor, licht, 1, zeit, schatten, index, random));
+            }
+        } else {
+            // 多光源模式：不在光源树中的光源（方向光）照常计算
+            for (Lichtquelle licht : andereLichter) {
+                direkt = direkt.add(beleuchtung(p, n, objColor, licht, 1, zeit, schatten, index, random));
             }
+            // 点光源按估计贡献随机抽样，除以 pdf * 样本数 得到无偏估计
+            for (int i = 0; i < lightSamples; i++) {
+                LightTree.Auswahl auswahl = lightTree.sample(p, random.nextDouble());
+                double faktor = 1.0 / (auswahl.pdf() * lightSamples);
+                direkt = direkt.add(beleuchtung(p, n, objColor, auswahl.licht(), faktor, zeit, schatten, index, random));
+            }
+        }
 
-            // 光源方向（从交点到光源）和强度
-            Vec3 l = licht.richtung(p).normalize();
-            Color lightIntensity = licht.einfallend(p);
+        // 5. 最终颜色合成
+        return ambient.add(direkt);
+    }
 
-            // 3. 漫反射（兰伯特定律）
-            double dotPktDiffus = Math.max(0, n.dot(l));  // 避免背面受光
-            float diffuseStrength = 0.6f;
-            Color diffuse = objColor
-                .multiply(diffuseStrength * dotPktDiffus)
-                .multiplyWithColor(lightIntensity);
-            diffuseTotal = diffuseTotal.add(diffuse);
+    /**
+     * 单个光源的漫反射 + 镜面反射贡献乘以 faktor（被遮挡时为黑色）。
+     * 有阴影队列时点光源和方向光只放入阴影射线，返回黑色。
+     */
+    private Color beleuchtung(Vec3 p, Vec3 n, Color objColor, Lichtquelle licht,
+                              double faktor, double zeit, RayQueue schatten, int index, Random random) {
+        if (schatten != null && !licht.isFlaechenlicht()) {
+            Color beitrag = unverdeckt(p, n, objColor, licht).multiply(faktor);
+            if (beitrag.r() <= 0 && beitrag.g() <= 0 && beitrag.b() <= 0) {
+                return Color.black(); // 没有贡献，不需要阴影射线
+            }
+            Ray shadowRay = schattenStrahl(p, n, licht, zeit);
+            if (shadowRay == null) {
+                return beitrag;
+            }
+            schatten.add(shadowRay, beitrag.r(), beitrag.g(), beitrag.b(), index, 0, licht);
+            return Color.black();
+        }
 
-            
-            // 4. Spiegelnder Term
-           // if (!licht.isPunktlicht()) {
-            Vec3 einfallsRichtung = l.multiply(-1).normalize();  // 入射方向
-            Vec3 r = reflect(n, einfallsRichtung).normalize(); // 反射方向
-            Vec3 blickRichtung = camera.position().subtract(p).normalize(); // 视线方向
-
-            // Color ankommendeIntensitaet = licht.einfallend(p);   //入射光强
-            Color spiegelnderReflexionskoeffizient = new Color(1.0,1.0,1.0,1);    //镜面反射系数
-            float spiegelungsStaerke = 0.7f;  // 镜面反射强度
-            double glanzExponent = 30;    //高光指数（越大越集中）
-                
-
-            double dotPkt = Math.max(0, r.dot(blickRichtung));  // 反射方向与视线夹角
-            Color spiegelnderTerm = lightIntensity
-                .multiply(spiegelungsStaerke)
-                .multiply((float) Math.pow(dotPkt, glanzExponent))
-                .multiplyWithColor(spiegelnderReflexionskoeffizient);
-            specularTotal = specularTotal.add(spiegelnderTerm);    
-            //}
+        // 检测阴影：被遮挡则该光源没有贡献（面光源为可见比例，软阴影）
+        double sichtbar = licht.isFlaechenlicht() ? sichtbarkeit(p, n, licht, zeit, random)
+                                                  : (isInShadow(p, n, licht, zeit) ? 0 : 1);
+        if (sichtbar <= 0) {
+            return Color.black();
         }
 
-        // 5. 最终颜色合成
-        return ambient.add(diffuseTotal).add(specularTotal);
+        Color beitrag = unverdeckt(p, n, objColor, licht);
+        return sichtbar * faktor != 1 ? beitrag.multiply(sichtbar * faktor) : beitrag;
+    }
+
+    /**
+     * 不考虑阴影时单个光源的漫反射 + 镜面反射贡献
+     */
+    private Color unverdeckt(Vec3 p, Vec3 n, Color objColor, Lichtquelle licht) {
+        // 光源方向（从交点到光源）和强度
+        Vec3 l = licht.richtung(p).normalize();
+        Color lightIntensity = licht.einfallend(p);
+
+        // 3. 漫反射（兰伯特定律）
+        double dotPktDiffus = Math.max(0, n.dot(l));  // 避免背面受光
+        float diffuseStrength = 0.6f;
+        Color diffuse = objColor
+            .multiply(diffuseStrength * dotPktDiffus)
+            .multiplyWithColor(lightIntensity);
+
+        // 4. Spiegelnder Term
+        Vec3 einfallsRichtung = l.multiply(-1).normalize();  // 入射方向
+        Vec3 r = reflect(n, einfallsRichtung).normalize(); // 反射方向
+        Vec3 blickRichtung = camera.position().subtract(p).normalize(); // 视线方向
+
+        Color spiegelnderReflexionskoeffizient = new Color(1.0,1.0,1.0,1);    //镜面反射系数
+        float spiegelungsStaerke = 0.7f;  // 镜面反射强度
+        double glanzExponent = 30;    //高光指数（越大越集中）
+
+        double dotPkt = Math.max(0, r.dot(blickRichtung));  // 反射方向与视线夹角
+        Color spiegelnderTerm = lightIntensity
+            .multiply(spiegelungsStaerke)
+            .multiply((float) Math.pow(dotPkt, glanzExponent))
+            .multiplyWithColor(spiegelnderReflexionskoeffizient);
+
+        return diffuse.add(spiegelnderTerm);
     }
 
     /**
      * 检测交点是否在光源的阴影中
      */
-    private boolean isInShadow(Vec3 p, Vec3 n, Lichtquelle licht) {
+    private boolean isInShadow(Vec3 p, Vec3 n, Lichtquelle licht, double zeit) {
+        Ray shadowRay = schattenStrahl(p, n, licht, zeit);
+        return shadowRay != null && verdeckt(shadowRay, licht);
+    }
+
+    /**
+     * 从交点指向点光源或方向光的阴影射线（点光源没有位置时为null）
+     */
+    private Ray schattenStrahl(Vec3 p, Vec3 n, Lichtquelle licht, double zeit) {
         // 1. 阴影射线起点：沿法向量偏移（避免自遮挡）
         double epsilon = 0.001;
         Vec3 shadowOrigin = p.add(n.multiply(epsilon));
@@ -212,7 +552,7 @@ public class SimpleRayTracer {
         if (licht.isPunktlicht()) {
             // 点光源：射线指向光源位置
             Vec3 lightPos = licht.getPosition();
-            if (lightPos == null) return false;
+            if (lightPos == null) return null;
 
             Vec3 toLight = lightPos.subtract(p);
             shadowDir = toLight.normalize();
@@ -224,17 +564,124 @@ public class SimpleRayTracer {
         }
 
         // 3. 创建阴影射线
-        Ray shadowRay = new Ray(shadowOrigin, shadowDir, epsilon, tMax);
+        return new Ray(shadowOrigin, shadowDir, epsilon, tMax, zeit);
+    }
+
+    /**
+     * 面光源的可见比例（0 = 完全在阴影中，1 = 完全可见）。
+     *
+     * <p>
+     * 光源表面按 k×k 网格分层，每格随机抖动取一个样本，k² 约等于光源的样本预算。
+     * 自适应模式下先在四个象限各取一个探测样本：结果一致（全亮或全暗）
+     * 就直接返回，只有在半影区域（结果不一致）才取完整的样本数。
+     */
+    private double sichtbarkeit(Vec3 p, Vec3 n, Lichtquelle licht, double zeit, Random random) {
+        double epsilon = 0.001;
+        Vec3 shadowOrigin = p.add(n.multiply(epsilon));
+
+        int k = Math.max(1, (int) Math.round(Math.sqrt(licht.getSamples())));
+        int sichtbar = 0;
+        int anzahl = 0;
+
+        if (adaptiveSoftShadows && k * k > 4) {
+            for (int i = 0; i < 4; i++) {
+                double u = ((i % 2) + random.nextDouble()) / 2;
+                double v = ((i / 2) + random.nextDouble()) / 2;
+                if (!schattenSample(shadowOrigin, p, licht, u, v, epsilon, zeit)) {
+                    sichtbar++;
+                }
+            }
+            anzahl = 4;
+            if (sichtbar == 0 || sichtbar == 4) {
+                return sichtbar / 4.0; // 不在半影中
+            }
+        }
+
+        for (int j = 0; j < k; j++) {
+            for (int i = 0; i < k; i++) {
+                double u = (i + random.nextDouble()) / k;
+                double v = (j + random.nextDouble()) / k;
+                if (!schattenSample(shadowOrigin, p, licht, u, v, epsilon, zeit)) {
+                    sichtbar++;
+                }
+            }
+        }
+        anzahl += k * k;
+        return (double) sichtbar / anzahl;
+    }
+
+    // 一条指向光源表面点 (u,v) 的阴影射线是否被遮挡
+    private boolean schattenSample(Vec3 shadowOrigin, Vec3 p, Lichtquelle licht, double u, double v, double epsilon, double zeit) {
+        Vec3 toLight = licht.samplePunkt(p, u, v).subtract(p);
+        double tMax = toLight.length() - epsilon;
+        if (tMax <= epsilon) return false;
+        Ray shadowRay = new Ray(shadowOrigin, toLight, epsilon, tMax, zeit);
+        return verdeckt(shadowRay, licht);
+    }
+
+    /**
+     * 阴影射线是否被遮挡。先测试当前线程对这个光源上一次找到的遮挡物，
+     * 相邻像素通常被同一个物体遮挡，大多数查询一次求交就能结束；
+     * 否则再遍历整个场景，并记住新的遮挡物。
+     */
+    boolean verdeckt(Ray shadowRay, Lichtquelle licht) {
+        Map<Lichtquelle, Shape> cache = letzterBlocker.get();
+        Shape letzter = cache.get(licht);
+        schattenAnfragen.increment();
+
+        if (letzter != null) {
+            Hit hit = letzter.intersect(shadowRay);
+            if (hit != null && shadowRay.isWithinBounds(hit.t())) {
+                cacheTreffer.increment();
+                blocker(hit);
+                return true;
+            }
+        }
 
-        // 4. 检测与球体的遮挡
         for (Shape shape : scene) {
+            if (shape == null || shape == letzter) continue;
+            if (shape instanceof Bvh bvh) {
+                // 整个场景常常是一个 BVH：缓存它的叶子（图元或 Instance），而不是总会"命中"的 BVH 本身
+                Shape blatt = bvh.verdecker(shadowRay);
+                if (blatt != null) {
+                    cache.put(licht, blatt);
+                    if (protokoll.get() != null) {
+                        blocker(blatt.intersect(shadowRay));
+                    }
+                    return true;
+                }
+                continue;
+            }
             Hit hit = shape.intersect(shadowRay);
             if (hit != null && shadowRay.isWithinBounds(hit.t())) {
-                return true; // 被任何形状遮挡改成了false
+                cache.put(licht, shape); // 被任何形状遮挡
+                blocker(hit);
+                return true;
             }
         }
 
-        // 6. 无遮挡
+        // 无遮挡
         return false;
     }
+
+    // 记录遮挡物（IncrementalRenderer）
+    private void blocker(Hit hit) {
+        IncrementalRenderer.Protokoll aufnahme = protokoll.get();
+        if (aufnahme != null) {
+            aufnahme.objekt(hit.shape());
+        }
+    }
+
+    /**
+     * 阴影缓存命中率：被缓存的遮挡物直接结束的阴影查询 / 所有阴影查询
+     */
+    public double getShadowCacheHitRate() {
+        long anfragen = schattenAnfragen.sum();
+        return anfragen == 0 ? 0 : (double) cacheTreffer.sum() / anfragen;
+    }
+
+    public void printShadowCacheStats() {
+        System.out.format("shadow queries: %d, occluder cache hits: %d (%.1f%%)\n",
+            schattenAnfragen.sum(), cacheTreffer.sum(), 100 * getShadowCacheHitRate());
+    }
 }
\ No newline at end of file
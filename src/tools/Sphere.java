@@ -6,6 +6,7 @@ public class Sphere implements Shape {
     private final double r;
     private final Color color;
     private final ImageTexture texture;
+    private final Material material;
 
     // 纯色构造函数
     public Sphere(Vec3 c, double r, Color color,Material material){
@@ -13,14 +14,21 @@ public class Sphere implements Shape {
         this.r = r;
         this.color = color;
         this.texture = null;
+        this.material = material;
     }
 
     // 纹理构造函数
     public Sphere(Vec3 c, double r, ImageTexture texture) {
+        this(c, r, texture, null);
+    }
+
+    // 纹理和材质（例如 PathTracer 用的材质，纹理只决定 SimpleRayTracer 的颜色）
+    public Sphere(Vec3 c, double r, ImageTexture texture, Material material) {
         this.c = c;
         this.r = r;
         this.color = null;
         this.texture = texture;
+        this.material = material;
     }
 
 
@@ -69,6 +77,25 @@ public class Sphere implements Shape {
         return this.color;
     }
 
+    @Override
+    public Material getMaterial() {
+        return material;
+    }
+
+    @Override
+    public BoundingBox bounds() {
+        Vec3 ausdehnung = new Vec3(r, r, r);
+        return new BoundingBox(c.subtract(ausdehnung), c.add(ausdehnung));
+    }
+
+    public Vec3 center() {
+        return c;
+    }
+
+    public double radius() {
+        return r;
+    }
+
     // 根据UV坐标获取颜色
     public Color getColorAt(Vec2 uv) {
         if (texture != null) {
@@ -1,8 +1,11 @@
 package tools;
 
 
-public class StarrySky{
-    private Random random = Random.generator;
+public class StarrySky implements EnvironmentSampler {
+    // 固定的种子：每个进程（比如分布式渲染的每个 worker）生成的星空都相同，和进程的启动时间无关
+    private static final long SEED = 0x57A25L;
+
+    private Random random = Random.stream(SEED, 0); // 星空专用的随机流，不与其他线程共享
     private int starCount = 600;
     private Vec3[] starDirections; // 存储星星的方向和亮度
     private float[] starBrightness; // 星星亮度
@@ -49,4 +52,10 @@ public class StarrySky{
 
         return nightSky;
     }
+
+    // 作为背景采样器使用（可以直接交给SimpleRayTracer，或先用EnvironmentMap烘焙）
+    @Override
+    public Color sample(Vec3 direction) {
+        return getSkyColor(direction);
+    }
 }
\ No newline at end of file
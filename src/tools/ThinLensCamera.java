@@ -0,0 +1,94 @@
+package tools;
+
+/**
+ * 薄透镜相机（景深）。
+ *
+ * <p>
+ * 相机用完整的 look-at 基：从 position 看向 target，up 只用来确定画面的竖直方向，
+ * 可以任意倾斜（SimpleCamera 的上向固定为+Y，右向只在XZ平面内）。
+ * 每条射线从光圈圆盘上的一点出发，穿过对焦平面上针孔射线的交点：
+ * 对焦平面上的物体清晰，离它越远越模糊。光圈半径为0时和针孔相机相同。
+ *
+ * <p>
+ * 镜头样本由调用方给出（generateRay(pixel, lens, time)），和抗锯齿的像素抖动
+ * 属于同一个样本：PathTracer 每遍每像素仍然只有一条射线，
+ * 像素位置、快门时间和镜头位置分别取同一个 Halton 点的不同维度。
+ * [0,1)² 到圆盘用同心映射，分层的样本在光圈上仍然是分层的。
+ */
+public class ThinLensCamera extends SimpleCamera {
+    private final int width;
+    private final int height;
+    private final double d;          // 成像平面距离（像素）
+    private final Vec3 position;
+    private final Vec3 u;            // 右
+    private final Vec3 v;            // 上
+    private final Vec3 w;            // 后（相机沿 -w 方向看，和 SimpleCamera 的 forward 一样）
+    private final double blende;     // 光圈半径
+    private final double fokus;      // 对焦距离（沿视线方向）
+
+    /**
+     * @param alpha  水平视角
+     * @param target 看向的点
+     * @param up     大致的上方向（不能和视线平行）
+     * @param blende 光圈半径（0 = 针孔）
+     * @param fokus  到对焦平面的距离
+     */
+    public ThinLensCamera(double alpha, int width, int height, Vec3 position, Vec3 target, Vec3 up,
+                          double blende, double fokus) {
+        super(alpha, width, height, position, position.subtract(target));
+        this.width = width;
+        this.height = height;
+        this.d = (width / 2.0) / Math.tan(alpha / 2.0);
+        this.position = position;
+        this.w = position.subtract(target).normalize();
+        Vec3 rechts = up.cross(w);
+        if (rechts.length() < 1e-9) {
+            throw new IllegalArgumentException("up must not be parallel to the viewing direction");
+        }
+        this.u = rechts.normalize();
+        this.v = w.cross(u);
+        this.blende = Math.max(0, blende);
+        this.fokus = fokus;
+    }
+
+    // 对焦在 target 上
+    public ThinLensCamera(double alpha, int width, int height, Vec3 position, Vec3 target, Vec3 up,
+                          double blende) {
+        this(alpha, width, height, position, target, up, blende, target.subtract(position).length());
+    }
+
+    // 穿过光圈中心的射线（没有镜头样本的调用方，例如 SimpleRayTracer）
+    @Override
+    public Ray generateRay(Vec2 pixel) {
+        return new Ray(position, richtung(pixel), 0.001, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public Ray generateRay(Vec2 pixel, Vec2 lens, double time) {
+        Vec3 dir = richtung(pixel);
+        if (blende == 0) {
+            return new Ray(position, dir, 0.001, Double.POSITIVE_INFINITY, time);
+        }
+        // 针孔射线和对焦平面的交点：这一点在所有镜头样本下都清晰
+        Vec3 scharf = position.add(dir.multiply(fokus / -dir.dot(w)));
+        // 光圈上的点：光圈在相机的 u/v 平面内
+        Vec2 p = LowDiscrepancy.concentricDisk(lens.x(), lens.y());
+        Vec3 origin = position.add(u.multiply(blende * p.x())).add(v.multiply(blende * p.y()));
+        return new Ray(origin, scharf.subtract(origin), 0.001, Double.POSITIVE_INFINITY, time);
+    }
+
+    // 针孔射线的方向（归一化）
+    private Vec3 richtung(Vec2 pixel) {
+        double x3d = pixel.x() - width / 2.0;
+        double y3d = -(pixel.y() - height / 2.0);
+        return u.multiply(x3d).add(v.multiply(y3d)).add(w.multiply(-d)).normalize();
+    }
+
+    public double getBlende() {
+        return blende;
+    }
+
+    public double getFokus() {
+        return fokus;
+    }
+}
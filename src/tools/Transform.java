@@ -0,0 +1,156 @@
+package tools;
+
+/**
+ * 一个仿射变换和它求交时需要的一切：矩阵、逆矩阵和变换法向量的方法，构造时一次算好。
+ *
+ * <p>
+ * 构造时按矩阵的形式分类，逆矩阵用对这一类最便宜的方法计算：
+ * <ul>
+ * <li>IDENTITAET：什么都不做，射线和交点原样返回</li>
+ * <li>VERSCHIEBUNG（只有平移）：只加减平移量，方向和法向量不变</li>
+ * <li>STARR（旋转 + 平移）：逆矩阵是转置，法向量和方向用同一个矩阵</li>
+ * <li>GLEICHFOERMIG（旋转 + 均匀缩放 s）：逆矩阵是转置 / s²，法向量也用原矩阵，再除以 s</li>
+ * <li>AFFIN（一般情况，包括不均匀缩放和剪切）：伴随矩阵求逆，法向量用逆矩阵的转置</li>
+ * </ul>
+ * 射线变换到局部坐标系时方向不归一化，局部的t和世界的t相同，
+ * 交点变换回去时t不需要换算。
+ */
+public final class Transform {
+    public enum Art { IDENTITAET, VERSCHIEBUNG, STARR, GLEICHFOERMIG, AFFIN }
+
+    public static final Transform identity = new Transform(Affine.identity);
+
+    private static final double EPSILON = 1e-12;
+
+    private final Art art;
+    private final Affine matrix;
+    private final Affine inverse;
+    private final double skala; // GLEICHFOERMIG 的缩放因子（其他情况为1）
+
+    private Transform(Affine matrix) {
+        this.matrix = matrix;
+        Affine a = matrix;
+
+        // 3x3部分的列
+        double xx = a.m00 * a.m00 + a.m10 * a.m10 + a.m20 * a.m20;
+        double yy = a.m01 * a.m01 + a.m11 * a.m11 + a.m21 * a.m21;
+        double zz = a.m02 * a.m02 + a.m12 * a.m12 + a.m22 * a.m22;
+        double xy = a.m00 * a.m01 + a.m10 * a.m11 + a.m20 * a.m21;
+        double xz = a.m00 * a.m02 + a.m10 * a.m12 + a.m20 * a.m22;
+        double yz = a.m01 * a.m02 + a.m11 * a.m12 + a.m21 * a.m22;
+        // 所有容差都相对于列长度的平方：缩放 s 时列的点积也按 s² 变化
+        double toleranz = EPSILON * xx;
+        boolean orthogonal = Math.abs(xy) < toleranz && Math.abs(xz) < toleranz && Math.abs(yz) < toleranz
+                             && Math.abs(xx - yy) < toleranz && Math.abs(xx - zz) < toleranz;
+        boolean einheit = a.m00 == 1 && a.m11 == 1 && a.m22 == 1
+                          && a.m01 == 0 && a.m02 == 0 && a.m10 == 0 && a.m12 == 0 && a.m20 == 0 && a.m21 == 0;
+
+        if (einheit) {
+            boolean verschoben = a.m03 != 0 || a.m13 != 0 || a.m23 != 0;
+            art = verschoben ? Art.VERSCHIEBUNG : Art.IDENTITAET;
+            inverse = verschoben ? new Affine(1, 0, 0, -a.m03, 0, 1, 0, -a.m13, 0, 0, 1, -a.m23) : Affine.identity;
+            skala = 1;
+        } else if (orthogonal && xx > 0) {
+            // A = s·R，A⁻¹ = Aᵀ / s²
+            double s2 = xx;
+            art = Math.abs(s2 - 1) < EPSILON ? Art.STARR : Art.GLEICHFOERMIG;
+            skala = art == Art.STARR ? 1 : Math.sqrt(s2);
+            double f = art == Art.STARR ? 1 : 1 / s2;
+            double i00 = a.m00 * f, i01 = a.m10 * f, i02 = a.m20 * f;
+            double i10 = a.m01 * f, i11 = a.m11 * f, i12 = a.m21 * f;
+            double i20 = a.m02 * f, i21 = a.m12 * f, i22 = a.m22 * f;
+            inverse = new Affine(i00, i01, i02, -(i00 * a.m03 + i01 * a.m13 + i02 * a.m23),
+                                 i10, i11, i12, -(i10 * a.m03 + i11 * a.m13 + i12 * a.m23),
+                                 i20, i21, i22, -(i20 * a.m03 + i21 * a.m13 + i22 * a.m23));
+        } else {
+            art = Art.AFFIN;
+            inverse = matrix.invert();
+            skala = 1;
+        }
+    }
+
+    public static Transform of(Mat44 m) {
+        return new Transform(Affine.of(m));
+    }
+
+    public static Transform of(Affine m) {
+        return new Transform(m);
+    }
+
+    // 逐元素线性插值（运动的组），结果重新分类
+    public static Transform interpolate(Transform a, Transform b, double t) {
+        return new Transform(Affine.interpolate(a.matrix, b.matrix, t));
+    }
+
+    public Art art() {
+        return art;
+    }
+
+    public boolean isIdentity() {
+        return art == Art.IDENTITAET;
+    }
+
+    public Affine matrix() {
+        return matrix;
+    }
+
+    public Affine inverse() {
+        return inverse;
+    }
+
+    /**
+     * 世界（父）坐标系的射线变换到局部坐标系，方向不归一化，t不变
+     */
+    public Ray toLocal(Ray ray) {
+        switch (art) {
+            case IDENTITAET:
+                return ray;
+            case VERSCHIEBUNG: {
+                Vec3 o = ray.origin();
+                Vec3 origin = new Vec3(o.x() - matrix.m03, o.y() - matrix.m13, o.z() - matrix.m23);
+                return Ray.unnormalisiert(origin, ray.direction(), ray.tmin(), ray.tmax(), ray.time());
+            }
+            default:
+                return inverse.transformRay(ray);
+        }
+    }
+
+    /**
+     * 局部坐标系的交点变换到世界（父）坐标系：位置按点变换，法向量保持垂直于表面并归一化
+     */
+    public Hit toWorld(Hit hit) {
+        switch (art) {
+            case IDENTITAET:
+                return hit;
+            case VERSCHIEBUNG: {
+                Vec3 p = hit.position();
+                Vec3 position = new Vec3(p.x() + matrix.m03, p.y() + matrix.m13, p.z() + matrix.m23);
+                return new Hit(hit.t(), position, hit.normal(), hit.shape(), hit.uv());
+            }
+            case STARR:
+                return new Hit(hit.t(), matrix.transformPoint(hit.position()),
+                               matrix.transformVector(hit.normal()), hit.shape(), hit.uv());
+            case GLEICHFOERMIG:
+                return new Hit(hit.t(), matrix.transformPoint(hit.position()),
+                               matrix.transformVector(hit.normal()).multiply(1 / skala), hit.shape(), hit.uv());
+            default:
+                return matrix.transformHit(hit, inverse);
+        }
+    }
+
+    // 世界坐标系的点变换到局部坐标系
+    public Vec3 pointToLocal(Vec3 p) {
+        if (art == Art.IDENTITAET) return p;
+        return inverse.transformPoint(p);
+    }
+
+    // 局部坐标系的点变换到世界坐标系
+    public Vec3 pointToWorld(Vec3 p) {
+        if (art == Art.IDENTITAET) return p;
+        return matrix.transformPoint(p);
+    }
+
+    public Mat44 toMat44() {
+        return matrix.toMat44();
+    }
+}
@@ -0,0 +1,249 @@
+package tools;
+
+import java.util.stream.IntStream;
+
+/**
+ * 按阶段（wavefront）渲染 SimpleRayTracer 的场景。
+ *
+ * <p>
+ * 一个图块的射线不再逐个像素走完 生成 → 求交 → 着色 → 阴影 的调用链，
+ * 而是按"代"分阶段整批处理，每个阶段只做一件事：
+ * <ol>
+ * <li>生成：从 SimpleCamera 生成图块所有的主射线</li>
+ * <li>求交：对这一代所有射线查找最近交点</li>
+ * <li>排序：按击中的形状类型（Sphere / Ebene / Box / 其他 Group 叶子）对交点排序</li>
+ * <li>着色：按排序后的顺序计算材质和光照，次级射线进入下一代，
+ * 点光源和方向光的阴影射线进入阴影队列</li>
+ * <li>阴影：整批测试阴影射线</li>
+ * <li>累加：局部颜色乘以吞吐量累加到像素</li>
+ * </ol>
+ * 射线和阴影射线都存放在 RayQueue 的基本类型数组里。同一阶段的代码连续执行，
+ * 分支和内存访问更集中；求交、着色和阴影阶段各自按块并行。
+ * 结果和 SimpleRayTracer.getResult 相同。
+ */
+public class WavefrontRenderer {
+    // 并行阶段每个任务处理的射线数
+    private static final int BLOCK = 256;
+
+    private final SimpleRayTracer tracer;
+    private boolean parallel = true;
+
+    public WavefrontRenderer(SimpleRayTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * 各阶段是否按块并行（默认开启）。调用方自己已经按图块并行时可以关闭。
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * 按 kachel × kachel 的图块渲染整幅图像
+     *
+     * @return 未击中任何物体的像素数
+     */
+    public int render(Image image, int kachel) {
+        int leer = 0;
+        for (int y0 = 0; y0 < image.height(); y0 += kachel) {
+            for (int x0 = 0; x0 < image.width(); x0 += kachel) {
+                int breite = Math.min(kachel, image.width() - x0);
+                int hoehe = Math.min(kachel, image.height() - y0);
+                SimpleRayTracer.TraceResult[] ergebnis = traceTile(x0, y0, breite, hoehe);
+                for (int i = 0; i < ergebnis.length; i++) {
+                    if (ergebnis[i].isMiss()) leer++;
+                    image.setPixel(x0 + i % breite, y0 + i / breite, ergebnis[i].color());
+                }
+            }
+        }
+        return leer;
+    }
+
+    /**
+     * 追踪一个图块（从 (x0, y0) 开始 breite × hoehe 个像素）的主射线，结果按行存放。
+     */
+    public SimpleRayTracer.TraceResult[] traceTile(int x0, int y0, int breite, int hoehe) {
+        int n = breite * hoehe;
+        double[] farbe = new double[3 * n];
+        Hit[] ersterHit = new Hit[n];
+
+        RayQueue welle = erzeugen(x0, y0, breite, hoehe);
+        boolean primaer = true;
+
+        while (!welle.isEmpty()) {
+            int m = welle.size();
+
+            Hit[] treffer = schneiden(welle);
+            if (primaer) {
+                for (int k = 0; k < m; k++) {
+                    ersterHit[welle.index(k)] = treffer[k];
+                }
+                primaer = false;
+            }
+
+            int[] reihenfolge = sortieren(treffer);
+            double[] lokal = new double[3 * m];
+            double[] alpha = new double[m];
+            RayQueue schatten = new RayQueue(m);
+            RayQueue naechste = schattieren(welle, treffer, reihenfolge, lokal, alpha, schatten, x0, y0, breite);
+
+            schattenTesten(schatten, lokal);
+            sammeln(welle, treffer, lokal, alpha, farbe);
+
+            welle = naechste;
+        }
+
+        SimpleRayTracer.TraceResult[] ergebnis = new SimpleRayTracer.TraceResult[n];
+        for (int p = 0; p < n; p++) {
+            Color c = new Color(farbe[3 * p], farbe[3 * p + 1], farbe[3 * p + 2], 1);
+            ergebnis[p] = new SimpleRayTracer.TraceResult(c.clamp(), ersterHit[p]);
+        }
+        return ergebnis;
+    }
+
+    // 1. 生成：每个像素一条主射线，吞吐量为1
+    private RayQueue erzeugen(int x0, int y0, int breite, int hoehe) {
+        RayQueue welle = new RayQueue(breite * hoehe);
+        for (int j = 0; j < hoehe; j++) {
+            for (int i = 0; i < breite; i++) {
+                welle.add(tracer.primaerStrahl(x0 + i, y0 + j), 1, 1, 1, j * breite + i, SimpleRayTracer.MAX_TIEFE, null);
+            }
+        }
+        return welle;
+    }
+
+    // 2. 求交：达到终止条件（深度或吞吐量）的射线不求交，和未击中一样取背景色
+    private Hit[] schneiden(RayQueue welle) {
+        Hit[] treffer = new Hit[welle.size()];
+        double minGewicht = tracer.minGewicht();
+        bloecke(welle.size(), (von, bis) -> {
+            for (int k = von; k < bis; k++) {
+                double gewicht = Math.max(welle.r(k), Math.max(welle.g(k), welle.b(k)));
+                if (welle.tiefe(k) > 0 && gewicht >= minGewicht) {
+                    treffer[k] = tracer.findClosestHit(welle.ray(k));
+                }
+            }
+        });
+        return treffer;
+    }
+
+    // 3. 排序：按形状类型计数排序（稳定），未击中的射线不需要着色，不在结果里
+    private static int[] sortieren(Hit[] treffer) {
+        int[] anzahl = new int[4];
+        int getroffen = 0;
+        for (Hit hit : treffer) {
+            if (hit != null) {
+                anzahl[typ(hit.shape())]++;
+                getroffen++;
+            }
+        }
+        int[] start = {0, anzahl[0], anzahl[0] + anzahl[1], anzahl[0] + anzahl[1] + anzahl[2]};
+        int[] reihenfolge = new int[getroffen];
+        for (int k = 0; k < treffer.length; k++) {
+            if (treffer[k] != null) {
+                reihenfolge[start[typ(treffer[k].shape())]++] = k;
+            }
+        }
+        return reihenfolge;
+    }
+
+    private static int typ(Shape shape) {
+        if (shape instanceof Sphere) return 0;
+        if (shape instanceof Ebene) return 1;
+        if (shape instanceof Box) return 2;
+        return 3;
+    }
+
+    /**
+     * 4. 着色：每个块有自己的次级射线队列和阴影队列，最后按块的顺序合并，
+     * 结果和串行执行的顺序一致。
+     *
+     * @return 下一代射线
+     */
+    private RayQueue schattieren(RayQueue welle, Hit[] treffer, int[] reihenfolge,
+                                 double[] lokal, double[] alpha, RayQueue schatten,
+                                 int x0, int y0, int breite) {
+        int bloecke = (reihenfolge.length + BLOCK - 1) / BLOCK;
+        RayQueue[] naechsteTeile = new RayQueue[bloecke];
+        RayQueue[] schattenTeile = new RayQueue[bloecke];
+
+        bloecke(reihenfolge.length, (von, bis) -> {
+            RayQueue naechste = new RayQueue(bis - von);
+            RayQueue teilSchatten = new RayQueue(bis - von);
+            for (int j = von; j < bis; j++) {
+                int k = reihenfolge[j];
+                Hit hit = treffer[k];
+                Ray strahl = welle.ray(k);
+                alpha[k] = tracer.sekundaer(strahl, hit, welle.r(k), welle.g(k), welle.b(k),
+                                            welle.tiefe(k), welle.index(k), naechste);
+                if (alpha[k] > 0) {
+                    int p = welle.index(k);
+                    long pixel = SimpleRayTracer.pixel(x0 + p % breite, y0 + p / breite);
+                    // 环境光 + 面光源；随机流和逐像素追踪时相同
+                    Color c = tracer.shade(hit, strahl.time(), teilSchatten, k, tracer.zufall(pixel, hit));
+                    lokal[3 * k] = c.r();
+                    lokal[3 * k + 1] = c.g();
+                    lokal[3 * k + 2] = c.b();
+                }
+            }
+            naechsteTeile[von / BLOCK] = naechste;
+            schattenTeile[von / BLOCK] = teilSchatten;
+        });
+
+        RayQueue naechste = new RayQueue(welle.size());
+        for (int b = 0; b < bloecke; b++) {
+            naechste.addAll(naechsteTeile[b]);
+            schatten.addAll(schattenTeile[b]);
+        }
+        return naechste;
+    }
+
+    // 5. 阴影：先并行测试所有阴影射线，再把未被遮挡的贡献加到对应交点上
+    //    （同一个交点可能有多条阴影射线，累加放在串行部分）
+    private void schattenTesten(RayQueue schatten, double[] lokal) {
+        boolean[] frei = new boolean[schatten.size()];
+        bloecke(schatten.size(), (von, bis) -> {
+            for (int s = von; s < bis; s++) {
+                frei[s] = !tracer.verdeckt(schatten.ray(s), schatten.licht(s));
+            }
+        });
+        for (int s = 0; s < frei.length; s++) {
+            if (frei[s]) {
+                int k = schatten.index(s);
+                lokal[3 * k] += schatten.r(s);
+                lokal[3 * k + 1] += schatten.g(s);
+                lokal[3 * k + 2] += schatten.b(s);
+            }
+        }
+    }
+
+    // 6. 累加：未击中的射线取背景色，表面的局部颜色先限制在[0,1]，再乘以透明度和吞吐量
+    private void sammeln(RayQueue welle, Hit[] treffer, double[] lokal, double[] alpha, double[] farbe) {
+        for (int k = 0; k < welle.size(); k++) {
+            int p = welle.index(k);
+            if (treffer[k] == null) {
+                Color c = tracer.hintergrund(welle.ray(k).direction());
+                farbe[3 * p] += welle.r(k) * c.r();
+                farbe[3 * p + 1] += welle.g(k) * c.g();
+                farbe[3 * p + 2] += welle.b(k) * c.b();
+            } else if (alpha[k] > 0) {
+                farbe[3 * p] += welle.r(k) * alpha[k] * Math.max(0, Math.min(1, lokal[3 * k]));
+                farbe[3 * p + 1] += welle.g(k) * alpha[k] * Math.max(0, Math.min(1, lokal[3 * k + 1]));
+                farbe[3 * p + 2] += welle.b(k) * alpha[k] * Math.max(0, Math.min(1, lokal[3 * k + 2]));
+            }
+        }
+    }
+
+    private interface Block {
+        void run(int von, int bis);
+    }
+
+    // 把 [0, n) 分成 BLOCK 大小的块，并行或串行执行
+    private void bloecke(int n, Block block) {
+        int anzahl = (n + BLOCK - 1) / BLOCK;
+        IntStream bereich = IntStream.range(0, anzahl);
+        (parallel && anzahl > 1 ? bereich.parallel() : bereich)
+            .forEach(b -> block.run(b * BLOCK, Math.min(n, (b + 1) * BLOCK)));
+    }
+}